@@ -0,0 +1,33 @@
+package org.uuu.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// Scripts under resources/corpus, benchmarks take their name as a @Param.
+final class Corpus {
+    private Corpus() {
+    }
+
+    // a large script of small functions, for measuring the front end on multi-megabyte sources
+    static String generate(int size) {
+        StringBuilder sb = new StringBuilder(size + 128);
+        for (int i = 0; sb.length() < size; i++)
+            sb.append("fn f").append(i).append("(a, b) {\n")
+              .append("  var x = a * 3.25 + b - ").append(i).append(";\n")
+              .append("  if(x >= 10 & !(b == null)) return \"value\"; // note\n")
+              .append("  return self.field + x;\n")
+              .append("}\n");
+        return sb.toString();
+    }
+
+    static String read(String name) {
+        try (InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name + ".uuu")) {
+            if (in == null) throw new IllegalArgumentException("No corpus script " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.uuu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.interpreter.Interpreter;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.scanner.Scanner;
+import org.uuu.core.vm.VM;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+    @Param({"fib", "loops", "strings", "objects", "closures"})
+    private String script;
+
+    @Param({"tree", "jit", "vm"})
+    private String engine;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp() {
+        statements = Parser.parse(Scanner.scan(Corpus.read(script)));
+    }
+
+    @Benchmark
+    public Object interpret() {
+        return switch (engine) {
+            case "vm" -> new VM().interpret(statements);
+            case "jit" -> new Interpreter(statements, true).interpret();
+            default -> new Interpreter(statements).interpret();
+        };
+    }
+}
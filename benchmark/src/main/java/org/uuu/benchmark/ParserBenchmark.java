@@ -0,0 +1,56 @@
+package org.uuu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.scanner.Scanner;
+import org.uuu.core.scanner.Token;
+import org.uuu.core.scanner.TokenStream;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"fib", "loops", "strings", "objects", "closures", "generated"})
+    private String script;
+
+    private String code;
+    private List<Token> tokens;
+    private TokenStream stream;
+
+    @Setup
+    public void setUp() {
+        code = script.equals("generated") ? Corpus.generate(4 << 20) : Corpus.read(script);
+        tokens = Scanner.scan(code);
+        stream = Scanner.stream(code);
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens).run();
+    }
+
+    @Benchmark
+    public List<Stmt> parseStream() {
+        return new Parser(stream).run();
+    }
+
+    // the whole front end on the compact representation, no token list in between
+    @Benchmark
+    public List<Stmt> scanAndParseStream() {
+        return Parser.parse(Scanner.stream(code));
+    }
+
+    // tokens pulled from a reader as the parser needs them, released after each top-level statement
+    @Benchmark
+    public List<Stmt> scanAndParsePulled() {
+        return new Parser(new Scanner(new StringReader(code)).pull()).run();
+    }
+}
@@ -0,0 +1,56 @@
+package org.uuu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.uuu.core.interpreter.Callable;
+import org.uuu.core.interpreter.Interpreter;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.scanner.Scanner;
+import org.uuu.core.scanner.Token;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what an assignment costs on top of evaluating its value, for growing value expressions.
+ * The same expression is evaluated once as a declaration and once as an assignment, the difference is
+ * the price of looking up where the assigned variable lives. It should stay flat as the expression grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolutionBenchmark {
+    private static final int ITERATIONS = 1_000;
+
+    @Param({"1", "8", "64", "256"})
+    private int terms;
+
+    @Param({"declare", "assign"})
+    private String statement;
+
+    private Interpreter interpreter;
+    private Callable run;
+
+    @Setup
+    public void setUp() {
+        StringBuilder expression = new StringBuilder("b");
+        for (int i = 1; i < terms; i++) expression.append(i % 2 == 0 ? " + b" : " - (b)");
+        String body = statement.equals("declare") ? "{ var t = %s; }" : "{ a = %s; }";
+        String code = """
+                      var a = 0;
+                      var b = 1;
+                      fn run() {
+                        for(var i = 0; i < %d; i = i + 1) %s
+                      }
+                      """.formatted(ITERATIONS, body.formatted(expression));
+        interpreter = new Interpreter(Parser.parse(Scanner.scan(code))).interpret();
+        run = (Callable) interpreter.getGlobals().get(Token.ofIdent("run", 0, 0));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public Object evaluate() {
+        return run.call0(interpreter);
+    }
+}
@@ -0,0 +1,35 @@
+package org.uuu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.uuu.core.analyser.ScopeResolver;
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.scanner.Scanner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolverBenchmark {
+    @Param({"fib", "loops", "strings", "objects", "closures"})
+    private String script;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp() {
+        statements = Parser.parse(Scanner.scan(Corpus.read(script)));
+    }
+
+    // resolving overwrites the slots stored by the previous run, so the same tree can be reused
+    @Benchmark
+    public List<Stmt> resolve() {
+        ScopeResolver.resolve(statements);
+        return statements;
+    }
+}
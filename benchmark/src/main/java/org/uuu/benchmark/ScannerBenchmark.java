@@ -0,0 +1,40 @@
+package org.uuu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.uuu.core.scanner.Scanner;
+import org.uuu.core.scanner.Token;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+    @Param({"fib", "loops", "strings", "objects", "closures", "generated"})
+    private String script;
+
+    private String code;
+
+    // reported by JMH as tokens per second next to the scans per second
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+    }
+
+    @Setup
+    public void setUp() {
+        code = script.equals("generated") ? Corpus.generate(4 << 20) : Corpus.read(script);
+    }
+
+    @Benchmark
+    public List<Token> scan(Tokens counter) {
+        List<Token> tokens = Scanner.scan(code);
+        counter.tokens += tokens.size();
+        return tokens;
+    }
+}
@@ -0,0 +1,76 @@
+package org.uuu.core;
+
+import org.uuu.core.analyser.ScopeResolver;
+import org.uuu.core.ast.statement.*;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.scanner.Scanner;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Scans, parses and resolves many files in parallel and links them into one program. Globals are looked up by
+// name, so every file is resolved on its own; linking only checks that no two files declare the same global.
+// Errors are reported in the order the files were given, whichever task fails first.
+public class FrontEnd {
+
+    // a file's resolved statements, or why it failed
+    private record Unit(List<Stmt> statements, String error) {
+    }
+
+    public static List<Stmt> compile(List<Path> files) {
+        return compile(files, ForkJoinPool.commonPool());
+    }
+
+    public static List<Stmt> compile(List<Path> files, ForkJoinPool pool) {
+        List<ForkJoinTask<Unit>> tasks = new ArrayList<>(files.size());
+        for (Path file : files) tasks.add(pool.submit(() -> compile(file)));
+
+        List<List<Stmt>> programs = new ArrayList<>(files.size());
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            Unit unit = tasks.get(i).join();
+            if (unit.error() != null) errors.add(files.get(i) + ": " + unit.error());
+            else programs.add(unit.statements());
+        }
+        if (!errors.isEmpty()) throw new RuntimeException(String.join("\n", errors));
+        return link(files, programs);
+    }
+
+    private static Unit compile(Path file) {
+        try {
+            List<Stmt> statements = new Parser(Scanner.open(file).pull()).run();
+            ScopeResolver.resolve(statements);
+            return new Unit(statements, null);
+        } catch (IOException | RuntimeException e) {
+            return new Unit(null, e.getMessage());
+        }
+    }
+
+    private static List<Stmt> link(List<Path> files, List<List<Stmt>> programs) {
+        Set<String> globals = new HashSet<>();
+        List<Stmt> program = new ArrayList<>();
+        for (int i = 0; i < programs.size(); i++) {
+            for (Stmt statement : programs.get(i)) {
+                String name = declaredName(statement);
+                if (name != null && !globals.add(name))
+                    throw new RuntimeException("%s: Variable with name '%s' already defined in the scope."
+                                                       .formatted(files.get(i), name));
+            }
+            program.addAll(programs.get(i));
+        }
+        return program;
+    }
+
+    private static String declaredName(Stmt statement) {
+        if (statement instanceof Var var) return var.getName().getLexeme();
+        if (statement instanceof Fn fn) return fn.getLexeme();
+        if (statement instanceof ClassStmt aClass) return aClass.getName().getLexeme();
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+package org.uuu.core;
+
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.vm.VM;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+// Time-slices many scripts over a fixed number of carrier threads. A script runs on the bytecode VM, whose frames
+// and stack live on the heap, so after a slice of loop back-edges and calls it is suspended and queued behind the
+// other scripts; a suspended script holds no thread. A script that never ends only delays the others by a slice.
+// The tree interpreter keeps a script's state on the Java stack and cannot be suspended, it only has safepoints.
+public class Scheduler implements AutoCloseable {
+    public static final int DEFAULT_SLICE = 10_000;
+
+    private final int slice;
+    private final ExecutorService carriers;
+    private final Set<CompletableFuture<VM>> pending = ConcurrentHashMap.newKeySet();
+
+    public Scheduler(int carriers) {
+        this(carriers, DEFAULT_SLICE, Executors.defaultThreadFactory());
+    }
+
+    public Scheduler(int carriers, int slice, ThreadFactory factory) {
+        this.slice = slice;
+        this.carriers = Executors.newFixedThreadPool(carriers, factory);
+    }
+
+    // The statements must not be shared with another script. Cancelling the future stops the script before its
+    // next slice.
+    public CompletableFuture<VM> submit(List<Stmt> statements) {
+        CompletableFuture<VM> result = new CompletableFuture<>();
+        pending.add(result);
+        result.whenComplete((vm, e) -> pending.remove(result));
+        schedule(result, () -> new VM().start(statements));
+        return result;
+    }
+
+    // runs one slice of the script on a carrier, the rest is queued behind the scripts already waiting
+    private void schedule(CompletableFuture<VM> result, Supplier<VM> script) {
+        try {
+            carriers.execute(() -> {
+                if (result.isDone()) return;
+                try {
+                    VM vm = script.get();
+                    if (vm.resume(slice)) result.complete(vm);
+                    else schedule(result, () -> vm);
+                } catch (Throwable e) {
+                    // a script overflowing the carrier's stack fails alone, its future must not hang
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(closed());
+        }
+    }
+
+    // The scripts still queued or running are failed, a slice already running ends at its next suspension.
+    @Override
+    public void close() {
+        carriers.shutdownNow();
+        pending.forEach(result -> result.completeExceptionally(closed()));
+    }
+
+    private static RuntimeException closed() {
+        return new RuntimeException("Scheduler is closed.");
+    }
+}
@@ -1,30 +1,72 @@
 package org.uuu.core;
 
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.cache.ParseCache;
+import org.uuu.core.interpreter.Interpreter;
+import org.uuu.core.optimizer.Inliner;
+import org.uuu.core.optimizer.Optimizer;
+import org.uuu.core.parser.Parser;
 import org.uuu.core.scanner.Scanner;
-import org.uuu.core.scanner.Token;
+import org.uuu.core.vm.VM;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class UUU {
+    private static boolean useVm = false;
+    private static boolean tiered = false;
+    private static boolean streaming = false;
+    private static boolean cached = false;
+    private static boolean lazy = false;
+    private static int inlineSize = Inliner.DEFAULT_SIZE;
+    private static boolean inlining = false;
+    private static boolean inlineReport = false;
+
     public static void main(String[] args) {
-        if (args.length == 0) runRepl();
-        else if (args.length != 1) System.out.println("Expected only one arg");
+        List<String> files = new ArrayList<>();
+        for (String arg : args)
+            if (arg.equals("--vm")) useVm = true;
+            else if (arg.equals("--jit")) tiered = true;
+            else if (arg.equals("--stream")) streaming = true;
+            else if (arg.equals("--cache")) cached = true;
+            else if (arg.equals("--lazy")) lazy = true;
+            else if (arg.startsWith("--inline=")) {
+                String size = arg.substring("--inline=".length());
+                try {
+                    inlineSize = Integer.parseInt(size);
+                } catch (NumberFormatException e) {
+                    inlineSize = -1;
+                }
+                if (inlineSize < 0) {
+                    System.out.println("Error: --inline expects a size of zero or more, got '%s'.".formatted(size));
+                    return;
+                }
+                inlining = true;
+            } else if (arg.equals("--inline-report")) inlineReport = true;
+            else files.add(arg);
+
+        String conflict = conflict(files.size());
+        if (conflict != null) {
+            System.out.println("Error: " + conflict);
+            return;
+        }
+
+        if (files.isEmpty()) runRepl();
+        else if (files.size() != 1) runAll(files.stream().map(Path::of).toList());
+        else if (cached) runCached(Path.of(files.get(0)));
         else {
-            String code;
+            Scanner scanner;
             try {
-                code = readFile(Path.of(args[0]));
+                scanner = Scanner.open(Path.of(files.get(0)));
             } catch (IOException e) {
                 System.out.println("Error while reading file: " + e.getMessage());
                 return;
             }
-            run(code);
-
+            run(new Parser(scanner.pull(), lazy));
         }
     }
 
@@ -43,15 +85,65 @@ public class UUU {
         }
     }
 
-    private static String readFile(Path path) throws IOException {
-        byte[] bytes = Files.readAllBytes(path);
-        return new String(bytes);
+    private static void run(String code) {
+        run(new Parser(Scanner.stream(code), lazy));
     }
 
-    private static void run(String code) {
-        Scanner scanner = new Scanner(code);
-        List<Token> tokens = scanner.scan();
-        System.out.println(tokens.stream().map(Token::toString).collect(Collectors.joining(" ")));
+    // with --stream the tree interpreter runs each top-level statement as soon as it is parsed,
+    // otherwise the whole file is parsed first so a syntax error stops it before anything runs
+    private static void run(Parser parser) {
+        try {
+            if (streaming && !useVm) {
+                Interpreter.interpret(parser, tiered);
+                return;
+            }
+            List<Stmt> statements = parser.run();
+            if (useVm) new VM().interpret(statements);
+            else new Interpreter(statements, tiered, optimizer()).interpret();
+        } catch (RuntimeException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    // the resolved program comes from the parse cache when the file did not change since its last run
+    private static void runCached(Path path) {
+        try {
+            List<Stmt> statements = ParseCache.standard().load(path);
+            if (useVm) new VM().interpret(statements);
+            else Interpreter.resolved(statements, tiered, optimizer()).interpret();
+        } catch (IOException e) {
+            System.out.println("Error while reading file: " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    // several files are compiled in parallel and run as one program, in the order given
+    private static void runAll(List<Path> paths) {
+        try {
+            List<Stmt> statements = FrontEnd.compile(paths);
+            if (useVm) new VM().interpret(statements);
+            else Interpreter.resolved(statements, tiered, optimizer()).interpret();
+        } catch (RuntimeException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    // a flag the chosen way of running does not use is an error rather than silently dropped
+    private static String conflict(int files) {
+        boolean optimizing = inlining || inlineReport;
+        if (useVm && streaming) return "--stream runs on the tree interpreter, it cannot be used with --vm.";
+        if (useVm && (tiered || optimizing)) return "--jit and --inline apply to the tree interpreter, not to --vm.";
+        if (streaming && optimizing) return "--stream does not inline, it cannot be used with --inline or --inline-report.";
+        if (streaming && cached) return "--stream cannot be used with --cache.";
+        if (cached && lazy) return "--cache stores fully parsed programs, it cannot be used with --lazy.";
+        if (files > 1 && (streaming || cached || lazy))
+            return "--stream, --cache and --lazy apply to a single file, got %d.".formatted(files);
+        return null;
+    }
+
+    private static Optimizer optimizer() {
+        return new Optimizer(inlineSize, inlineReport ? System.err::println : null);
     }
 
     private static void error(String line, int n, String message) {
@@ -3,90 +3,212 @@ package org.uuu.core.analyser;
 import org.uuu.core.ast.Visitor;
 import org.uuu.core.ast.expression.*;
 import org.uuu.core.ast.statement.*;
-import org.uuu.core.interpreter.Interpreter;
+import org.uuu.core.runtime.Slot;
 import org.uuu.core.scanner.Token;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
 public class ScopeResolver implements Visitor<Void> {
 
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    // a declared variable and every slot referring to it, they are all boxed when closures have to share it
+    private static class Local {
+        private final int index;
+        private final List<Slot> slots = new ArrayList<>();
+        private boolean captured = false;
+        private boolean assigned = false;
+        // a function or class is captured by its own body before its value is stored
+        private boolean initializing = false;
+        private boolean capturedEarly = false;
+
+        private Local(int index) {
+            this.index = index;
+        }
 
-    private final Interpreter interpreter;
+        private boolean shared() {
+            return captured && (assigned || capturedEarly);
+        }
+    }
+
+    private static class Scope {
+        private final Map<String, Boolean> defined = new HashMap<>();
+        private final Map<String, Local> locals = new HashMap<>();
+    }
+
+    // a function being resolved, the scopes from base on are its own
+    private static class Closure {
+        private final Closure enclosing;
+        private final int base;
+        private final List<Slot> captures = new ArrayList<>();
+        private final Map<Local, Integer> captured = new HashMap<>();
+
+        private Closure(Closure enclosing, int base) {
+            this.enclosing = enclosing;
+            this.base = base;
+        }
+    }
 
-    public ScopeResolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    private final Stack<Scope> scopes = new Stack<>();
+    private Closure closure = null;
+
+    public ScopeResolver() {
         beginScope();
     }
 
+    public static void resolve(List<Stmt> statements) {
+        ScopeResolver resolver = new ScopeResolver();
+        statements.forEach(e -> e.accept(resolver));
+    }
+
+    // resolves one more top-level statement against the globals seen so far
+    public void resolve(Stmt statement) {
+        statement.accept(this);
+    }
+
     @Override
     public Void accept(Block block) {
-        beginScope();
+        block.setScoped(block.getStatements().stream().anyMatch(ScopeResolver::declares));
+        if (block.isScoped()) beginScope();
         block.getStatements().forEach(e -> e.accept(this));
-        endScope();
+        if (block.isScoped()) endScope();
         return null;
     }
 
+    // whether the statement declares a variable in the scope it is in
+    private static boolean declares(Stmt statement) {
+        if (statement instanceof Var || statement instanceof Fn || statement instanceof ClassStmt) return true;
+        if (statement instanceof If anIf)
+            return declares(anIf.getOnTrue()) || anIf.getOnFalse() != null && declares(anIf.getOnFalse());
+        if (statement instanceof While aWhile) return declares(aWhile.getBody());
+        if (statement instanceof For aFor)
+            return aFor.getInitializer() != null && declares(aFor.getInitializer()) || declares(aFor.getBody());
+        return false;
+    }
+
     @Override
     public Void accept(Var var) {
-        declare(var.getName());
+        Local local = declare(var.getName());
         if (var.getInitializer() != null) var.getInitializer().accept(this);
         define(var.getName());
+        var.setSlot(declared(local));
         return null;
     }
 
     @Override
     public Void accept(Variable variable) {
-        if (!scopes.isEmpty() && scopes.peek().get(variable.getName().getLexeme()) == Boolean.FALSE)
+        if (!scopes.isEmpty() && scopes.peek().defined.get(variable.getName().getLexeme()) == Boolean.FALSE)
             throw new RuntimeException("Cannot read local variable in its own initializer.");
-        resolve(variable, variable.getName());
+        variable.setSlot(slot(variable.getName().getLexeme(), false));
         return null;
     }
 
-    private void resolve(Expr expr, Token name) {
-        for (int i = scopes.size() - 1; i >= 0; i--)
-            if (scopes.get(i).containsKey(name.getLexeme())) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
+    private Slot slot(String name, boolean assigned) {
+        // the outermost scope holds globals, they are looked up by name and cached in a cell
+        for (int i = scopes.size() - 1; i > 0; i--) {
+            Local local = scopes.get(i).locals.get(name);
+            if (local != null) {
+                local.assigned |= assigned;
+                return slot(local, i, closure, scopes.size() - 1);
+            }
+        }
+        return Slot.global();
+    }
+
+    // How a variable declared in scope i is reached from a function whose innermost scope is top. A variable of an
+    // enclosing function is captured, and so by every function in between.
+    private Slot slot(Local local, int i, Closure closure, int top) {
+        Slot slot;
+        if (closure == null || i >= closure.base) slot = new Slot(top - i, local.index);
+        else {
+            Integer index = closure.captured.get(local);
+            if (index == null) {
+                index = closure.captures.size();
+                closure.captured.put(local, index);
+                closure.captures.add(slot(local, i, closure.enclosing, closure.base - 1));
             }
+            local.captured = true;
+            local.capturedEarly |= local.initializing;
+            slot = Slot.captured(index);
+        }
+        local.slots.add(slot);
+        return slot;
+    }
+
+    private Slot declared(Local local) {
+        if (scopes.size() == 1) return null;
+        Slot slot = new Slot(0, local.index);
+        local.slots.add(slot);
+        return slot;
     }
 
-    private void resolve(Fn fn) {
+    private void resolve(Fn fn, boolean method) {
+        if (!fn.isParsed() && scopes.size() == 1) {
+            // a skimmed top-level body is resolved when it is parsed, it captures nothing as globals are looked up
+            // by name; a nested one is parsed now, its captures are needed when the enclosing code runs
+            fn.setCaptures(List.of());
+            fn.setResolver(body -> new ScopeResolver().resolve(fn, body, method));
+        } else resolve(fn, fn.getBody(), method);
+    }
+
+    private void resolve(Fn fn, List<Stmt> body, boolean method) {
+        closure = new Closure(closure, scopes.size());
         beginScope();
+        // a method receives its instance in the first slot of its own frame
+        if (method) defineSynthetic("self");
+        List<Slot> params = new ArrayList<>();
         fn.getParams().forEach(e -> {
-            declare(e);
+            Local local = declare(e);
             define(e);
+            params.add(declared(local));
         });
-        fn.getBody().forEach(e -> e.accept(this));
+        body.forEach(e -> e.accept(this));
         endScope();
+        fn.setParamSlots(params);
+        fn.setCaptures(closure.captures);
+        closure = closure.enclosing;
+    }
+
+    private Local declare(Token name) {
+        return declare(name.getLexeme());
     }
 
-    private void declare(Token name) {
-        if (scopes.peek().containsKey(name.getLexeme()))
-            throw new RuntimeException("Variable with name '%s' already defined in the scope.".formatted(name.getLexeme()));
-        scopes.peek().put(name.getLexeme(), false);
+    private Local declare(String name) {
+        Scope scope = scopes.peek();
+        if (scope.defined.containsKey(name))
+            throw new RuntimeException("Variable with name '%s' already defined in the scope.".formatted(name));
+        scope.defined.put(name, false);
+        Local local = new Local(scope.locals.size());
+        scope.locals.put(name, local);
+        return local;
     }
 
     private void define(Token name) {
-        scopes.peek().put(name.getLexeme(), true);
+        scopes.peek().defined.put(name.getLexeme(), true);
+    }
+
+    private void defineSynthetic(String name) {
+        declare(name);
+        scopes.peek().defined.put(name, true);
     }
 
 
     private void endScope() {
-        scopes.pop();
+        for (Local local : scopes.pop().locals.values())
+            if (local.shared()) local.slots.forEach(e -> e.setBoxed(true));
     }
 
     private void beginScope() {
-        scopes.push(new HashMap<>());
+        scopes.push(new Scope());
     }
 
 
     @Override
     public Void accept(Assign assign) {
         assign.getValue().accept(this);
-        resolve(assign, assign.getName());
+        assign.setSlot(slot(assign.getName().getLexeme(), true));
         return null;
     }
 
@@ -159,35 +281,40 @@ public class ScopeResolver implements Visitor<Void> {
 
     @Override
     public Void accept(Fn fn) {
-        declare(fn.getName());
+        Local local = declare(fn.getName());
         define(fn.getName());
-        resolve(fn);
+        fn.setSlot(declared(local));
+        local.initializing = true;
+        resolve(fn, false);
+        local.initializing = false;
         return null;
     }
 
     @Override
     public Void accept(Return aReturn) {
         if (aReturn.getValue() != null) aReturn.getValue().accept(this);
+        // a return leaves the function, so the call it returns is the last thing the function does
+        aReturn.setTail(closure != null && aReturn.getValue() instanceof Call);
         return null;
     }
 
     @Override
     public Void accept(ClassStmt aClass) {
-        declare(aClass.getName());
+        Local local = declare(aClass.getName());
         define(aClass.getName());
+        aClass.setSlot(declared(local));
+        local.initializing = true;
         if (aClass.getSuperclass() != null &&
             aClass.getSuperclass().getName().getLexeme().equals(aClass.getName().getLexeme()))
             throw new RuntimeException("Cannot inherit from itself.");
         if (aClass.getSuperclass() != null) {
             aClass.getSuperclass().accept(this);
             beginScope();
-            scopes.peek().put("super", true);
+            defineSynthetic("super");
         }
-        beginScope();
-        scopes.peek().put("self", true);
-        aClass.getMethods().forEach(this::resolve);
-        endScope();
+        aClass.getMethods().forEach(e -> resolve(e, true));
         if (aClass.getSuperclass() != null) endScope();
+        local.initializing = false;
         return null;
     }
 
@@ -206,13 +333,14 @@ public class ScopeResolver implements Visitor<Void> {
 
     @Override
     public Void accept(Self self) {
-        resolve(self, self.getKeyword());
+        self.setSlot(slot(self.getKeyword().getLexeme(), false));
         return null;
     }
 
     @Override
     public Void accept(Super aSuper) {
-        resolve(aSuper, aSuper.getKeyword());
+        aSuper.setSlot(slot(aSuper.getKeyword().getLexeme(), false));
+        aSuper.setReceiver(slot("self", false));
         return null;
     }
 
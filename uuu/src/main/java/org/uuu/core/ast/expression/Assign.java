@@ -3,13 +3,15 @@ package org.uuu.core.ast.expression;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.uuu.core.ast.Visitor;
+import org.uuu.core.runtime.Slot;
 import org.uuu.core.scanner.Token;
 
 @Data
 @RequiredArgsConstructor
-public class Assign extends Expr {
+public class Assign extends Expr implements Resolvable {
     private final Token name;
     private final Expr value;
+    private Slot slot;
 
     public <T> T accept(Visitor<T> visitor) {
         return visitor.accept(this);
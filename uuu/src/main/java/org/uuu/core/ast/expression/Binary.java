@@ -1,8 +1,11 @@
 package org.uuu.core.ast.expression;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
+import lombok.ToString;
 import org.uuu.core.ast.Visitor;
+import org.uuu.core.runtime.Specialization;
 import org.uuu.core.scanner.Token;
 
 @Data
@@ -11,6 +14,9 @@ public class Binary extends Expr {
     private final Token operator;
     private final Expr left;
     private final Expr right;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Specialization specialization = Specialization.UNINITIALIZED;
 
     public <T> T accept(Visitor<T> visitor) {
         return visitor.accept(this);
@@ -1,8 +1,11 @@
 package org.uuu.core.ast.expression;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
+import lombok.ToString;
 import org.uuu.core.ast.Visitor;
+import org.uuu.core.runtime.PropertyCache;
 import org.uuu.core.scanner.Token;
 
 @Data
@@ -10,6 +13,9 @@ import org.uuu.core.scanner.Token;
 public class Get extends Expr {
     private final Token name;
     private final Expr object;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private PropertyCache cache;
 
     @Override
     public <T> T accept(Visitor<T> visitor) {
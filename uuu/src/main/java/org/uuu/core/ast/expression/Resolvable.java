@@ -0,0 +1,9 @@
+package org.uuu.core.ast.expression;
+
+import org.uuu.core.runtime.Slot;
+
+public interface Resolvable {
+    Slot getSlot();
+
+    void setSlot(Slot slot);
+}
@@ -3,12 +3,14 @@ package org.uuu.core.ast.expression;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.uuu.core.ast.Visitor;
+import org.uuu.core.runtime.Slot;
 import org.uuu.core.scanner.Token;
 
 @Data
 @RequiredArgsConstructor
-public class Self extends Expr {
+public class Self extends Expr implements Resolvable {
     private final Token keyword;
+    private Slot slot;
 
     @Override
     public <T> T accept(Visitor<T> visitor) {
@@ -1,8 +1,11 @@
 package org.uuu.core.ast.expression;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
+import lombok.ToString;
 import org.uuu.core.ast.Visitor;
+import org.uuu.core.runtime.PropertyCache;
 import org.uuu.core.scanner.Token;
 
 @Data
@@ -11,6 +14,9 @@ public class Set extends Expr {
     private final Token name;
     private final Expr object;
     private final Expr value;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private PropertyCache cache;
 
     @Override
     public <T> T accept(Visitor<T> visitor) {
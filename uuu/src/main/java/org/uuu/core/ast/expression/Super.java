@@ -3,13 +3,16 @@ package org.uuu.core.ast.expression;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.uuu.core.ast.Visitor;
+import org.uuu.core.runtime.Slot;
 import org.uuu.core.scanner.Token;
 
 @Data
 @RequiredArgsConstructor
-public class Super extends Expr {
+public class Super extends Expr implements Resolvable {
     private final Token keyword;
     private final Token method;
+    private Slot slot;
+    private Slot receiver; // self of the method the super call is in
 
     @Override
     public <T> T accept(Visitor<T> visitor) {
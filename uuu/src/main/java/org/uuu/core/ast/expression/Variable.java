@@ -1,14 +1,16 @@
 package org.uuu.core.ast.expression;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import org.uuu.core.ast.Visitor;
+import org.uuu.core.runtime.Slot;
 import org.uuu.core.scanner.Token;
 
 @Data
-@AllArgsConstructor
-public class Variable extends Expr {
+@RequiredArgsConstructor
+public class Variable extends Expr implements Resolvable {
     private final Token name;
+    private Slot slot;
 
     @Override
     public <T> T accept(Visitor<T> visitor) {
@@ -10,6 +10,8 @@ import java.util.List;
 @RequiredArgsConstructor
 public class Block extends Stmt {
     private final List<Stmt> statements;
+    // cleared by the resolver when the block declares nothing, it then runs in the enclosing environment
+    private boolean scoped = true;
 
     @Override
     public <T> T accept(Visitor<T> visitor) {
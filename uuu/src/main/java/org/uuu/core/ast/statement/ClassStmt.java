@@ -4,6 +4,7 @@ import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.uuu.core.ast.Visitor;
 import org.uuu.core.ast.expression.Variable;
+import org.uuu.core.runtime.Slot;
 import org.uuu.core.scanner.Token;
 
 import java.util.List;
@@ -14,6 +15,7 @@ public class ClassStmt extends Stmt {
     private final Token name;
     private final Variable superclass;
     private final List<Fn> methods;
+    private Slot slot; // local declarations only
 
     @Override
     public <T> T accept(Visitor<T> visitor) {
@@ -1,18 +1,49 @@
 package org.uuu.core.ast.statement;
 
 import lombok.Data;
-import lombok.RequiredArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import org.uuu.core.ast.Visitor;
+import org.uuu.core.runtime.Slot;
 import org.uuu.core.scanner.Token;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+// The generated methods read the fields, a getter would parse a lazy body just to print or compare it.
 @Data
-@RequiredArgsConstructor
+@EqualsAndHashCode(doNotUseGetters = true)
+@ToString(doNotUseGetters = true)
 public class Fn extends Stmt {
     private final Token name;
     private final List<Token> params;
-    private final List<Stmt> body;
+    private List<Stmt> body;
+    private Slot slot; // local declarations only
+    private List<Slot> paramSlots;
+    // Where each variable the body uses from enclosing scopes is found when the function is declared. The
+    // function keeps just these values, or their cells when they are reassigned.
+    private List<Slot> captures;
+    // Set while the parser has only skimmed the body, it is parsed on first use. The resolver adds the
+    // step resolving it against the scopes the function was declared in.
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Supplier<List<Stmt>> parser;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Consumer<List<Stmt>> resolver;
+
+    public Fn(Token name, List<Token> params, List<Stmt> body) {
+        this.name = name;
+        this.params = params;
+        this.body = body;
+    }
+
+    public Fn(Token name, List<Token> params, Supplier<List<Stmt>> parser) {
+        this.name = name;
+        this.params = params;
+        this.parser = parser;
+    }
 
     @Override
     public <T> T accept(Visitor<T> visitor) {
@@ -22,4 +53,18 @@ public class Fn extends Stmt {
     public String getLexeme() {
         return name.getLexeme();
     }
+
+    public List<Stmt> getBody() {
+        if (body == null) {
+            body = parser.get();
+            if (resolver != null) resolver.accept(body);
+            parser = null;
+            resolver = null;
+        }
+        return body;
+    }
+
+    public boolean isParsed() {
+        return body != null;
+    }
 }
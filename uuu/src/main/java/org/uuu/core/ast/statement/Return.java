@@ -9,6 +9,8 @@ import org.uuu.core.ast.expression.Expr;
 @RequiredArgsConstructor
 public class Return extends Stmt {
     private final Expr value;
+    // a call returned from a function body, made after the function's own frame is gone
+    private boolean tail;
 
     @Override
     public <T> T accept(Visitor<T> visitor) {
@@ -1,16 +1,18 @@
 package org.uuu.core.ast.statement;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import org.uuu.core.ast.Visitor;
 import org.uuu.core.ast.expression.Expr;
+import org.uuu.core.runtime.Slot;
 import org.uuu.core.scanner.Token;
 
 @Data
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class Var extends Stmt {
     private final Token name;
     private final Expr initializer;
+    private Slot slot; // local declarations only
 
     @Override
     public <T> T accept(Visitor<T> visitor) {
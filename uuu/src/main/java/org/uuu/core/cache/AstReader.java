@@ -0,0 +1,215 @@
+package org.uuu.core.cache;
+
+import org.uuu.core.ast.expression.*;
+import org.uuu.core.ast.statement.*;
+import org.uuu.core.runtime.Slot;
+import org.uuu.core.scanner.Token;
+import org.uuu.core.scanner.TokenType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.uuu.core.cache.AstWriter.*;
+
+// Reads back what AstWriter wrote, the tree comes out with its slots set.
+public class AstReader {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final byte[] in;
+    private int p;
+    private final List<String> strings = new ArrayList<>();
+    private int line = 0;
+    private int pos = 0;
+
+    private AstReader(byte[] in, int offset) {
+        this.in = in;
+        this.p = offset;
+    }
+
+    public static List<Stmt> read(byte[] in) {
+        return read(in, 0);
+    }
+
+    public static List<Stmt> read(byte[] in, int offset) {
+        AstReader reader = new AstReader(in, offset);
+        List<Stmt> statements = reader.stmts();
+        if (reader.p != in.length) throw new RuntimeException("Unexpected data after the program at %d.".formatted(reader.p));
+        return statements;
+    }
+
+    private Stmt stmt() {
+        int tag = in[p++];
+        return switch (tag) {
+            case NULL -> null;
+            case EXPR_STMT -> new ExprStmt(expr());
+            case VAR -> {
+                Var var = new Var(token(), expr());
+                var.setSlot(slot());
+                yield var;
+            }
+            case BLOCK -> new Block(stmts());
+            case PLAIN_BLOCK -> {
+                Block block = new Block(stmts());
+                block.setScoped(false);
+                yield block;
+            }
+            case IF -> new If(expr(), stmt(), stmt());
+            case WHILE -> new While(expr(), stmt());
+            case FN -> fn();
+            case RETURN -> new Return(expr());
+            case TAIL_RETURN -> {
+                Return aReturn = new Return(expr());
+                aReturn.setTail(true);
+                yield aReturn;
+            }
+            case CLASS -> {
+                Token name = token();
+                Variable superclass = (Variable) expr();
+                Slot slot = slot();
+                List<Fn> methods = new ArrayList<>();
+                for (int n = varint(); n > 0; n--) methods.add((Fn) stmt());
+                ClassStmt aClass = new ClassStmt(name, superclass, methods);
+                aClass.setSlot(slot);
+                yield aClass;
+            }
+            case BREAK -> new BreakStmt(token());
+            case CONTINUE -> new ContinueStmt(token());
+            case FOR -> new For(stmt(), expr(), expr(), stmt());
+            default -> throw new RuntimeException("Unknown statement tag %d at %d.".formatted(tag, p - 1));
+        };
+    }
+
+    private Fn fn() {
+        Token name = token();
+        List<Token> params = new ArrayList<>();
+        for (int n = varint(); n > 0; n--) params.add(token());
+        Slot slot = slot();
+        List<Slot> paramSlots = slots();
+        List<Slot> captures = slots();
+        Fn fn = new Fn(name, params, stmts());
+        fn.setSlot(slot);
+        fn.setParamSlots(paramSlots);
+        fn.setCaptures(captures);
+        return fn;
+    }
+
+    private Expr expr() {
+        int tag = in[p++];
+        return switch (tag) {
+            case NULL -> null;
+            case ASSIGN -> {
+                Assign assign = new Assign(token(), expr());
+                assign.setSlot(slot());
+                yield assign;
+            }
+            case BINARY -> new Binary(token(), expr(), expr());
+            case CALL -> new Call(token(), expr(), exprs());
+            case LITERAL -> new Literal(value());
+            case UNARY -> new Unary(token(), expr());
+            case TERNARY -> new Ternary(expr(), expr(), expr());
+            case GROUP -> new Group(expr());
+            case VARIABLE -> {
+                Variable variable = new Variable(token());
+                variable.setSlot(slot());
+                yield variable;
+            }
+            case LOGIC -> new Logic(token(), expr(), expr());
+            case GET -> new Get(token(), expr());
+            case SET -> new Set(token(), expr(), expr());
+            case SELF -> {
+                Self self = new Self(token());
+                self.setSlot(slot());
+                yield self;
+            }
+            case SUPER -> {
+                Super aSuper = new Super(token(), token());
+                aSuper.setSlot(slot());
+                aSuper.setReceiver(slot());
+                yield aSuper;
+            }
+            default -> throw new RuntimeException("Unknown expression tag %d at %d.".formatted(tag, p - 1));
+        };
+    }
+
+    private List<Stmt> stmts() {
+        int n = varint();
+        List<Stmt> statements = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) statements.add(stmt());
+        return statements;
+    }
+
+    private List<Expr> exprs() {
+        int n = varint();
+        List<Expr> expressions = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) expressions.add(expr());
+        return expressions;
+    }
+
+    private Token token() {
+        TokenType type = TYPES[in[p++]];
+        String lexeme = string();
+        Object literal = value();
+        line += zigzag();
+        pos += zigzag();
+        return new Token(type, lexeme, literal, line, pos);
+    }
+
+    private Slot slot() {
+        int depth = varint();
+        if (depth == 0) return null;
+        if (depth == 1) return Slot.global();
+        int index = varint();
+        Slot slot = depth == 2 ? Slot.captured(index >>> 1) : new Slot(depth - 3, index >>> 1);
+        slot.setBoxed((index & 1) != 0);
+        return slot;
+    }
+
+    private List<Slot> slots() {
+        int n = varint() - 1;
+        if (n < 0) return null;
+        List<Slot> slots = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) slots.add(slot());
+        return slots;
+    }
+
+    private Object value() {
+        int tag = in[p++];
+        return switch (tag) {
+            case VALUE_NULL -> null;
+            case VALUE_TRUE -> true;
+            case VALUE_FALSE -> false;
+            case VALUE_NUMBER -> {
+                long bits = 0;
+                for (int i = 0; i < 8; i++) bits = bits << 8 | (in[p++] & 0xFF);
+                yield Double.longBitsToDouble(bits);
+            }
+            case VALUE_STRING -> string();
+            default -> throw new RuntimeException("Unknown literal tag %d at %d.".formatted(tag, p - 1));
+        };
+    }
+
+    private String string() {
+        int index = varint();
+        if (index < strings.size()) return strings.get(index);
+        int length = varint();
+        String s = new String(in, p, length, StandardCharsets.UTF_8);
+        p += length;
+        strings.add(s);
+        return s;
+    }
+
+    private int zigzag() {
+        int value = varint();
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private int varint() {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in[p++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
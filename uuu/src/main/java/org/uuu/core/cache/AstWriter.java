@@ -0,0 +1,327 @@
+package org.uuu.core.cache;
+
+import org.uuu.core.ast.Visitor;
+import org.uuu.core.ast.expression.*;
+import org.uuu.core.ast.statement.*;
+import org.uuu.core.runtime.Slot;
+import org.uuu.core.scanner.Token;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Writes a resolved tree in preorder, one tag byte per node. Numbers are varints, strings are written once and then
+// referred to by their index, slots are kept so the resolver does not have to run again.
+public class AstWriter implements Visitor<Void> {
+    static final int NULL = 0, ASSIGN = 1, BINARY = 2, CALL = 3, LITERAL = 4, UNARY = 5, TERNARY = 6, GROUP = 7,
+            EXPR_STMT = 8, VAR = 9, VARIABLE = 10, BLOCK = 11, IF = 12, LOGIC = 13, WHILE = 14, FN = 15, RETURN = 16,
+            CLASS = 17, GET = 18, SET = 19, SELF = 20, SUPER = 21, BREAK = 22, CONTINUE = 23, FOR = 24,
+            TAIL_RETURN = 25, PLAIN_BLOCK = 26;
+    static final int VALUE_NULL = 0, VALUE_TRUE = 1, VALUE_FALSE = 2, VALUE_NUMBER = 3, VALUE_STRING = 4;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final Map<String, Integer> strings = new HashMap<>();
+    private int line = 0;
+    private int pos = 0;
+
+    public static byte[] write(List<Stmt> statements) {
+        AstWriter writer = new AstWriter();
+        writer.stmts(statements);
+        return writer.out.toByteArray();
+    }
+
+    @Override
+    public Void accept(Assign assign) {
+        out.write(ASSIGN);
+        token(assign.getName());
+        node(assign.getValue());
+        slot(assign.getSlot());
+        return null;
+    }
+
+    @Override
+    public Void accept(Binary binary) {
+        out.write(BINARY);
+        token(binary.getOperator());
+        node(binary.getLeft());
+        node(binary.getRight());
+        return null;
+    }
+
+    @Override
+    public Void accept(Call call) {
+        out.write(CALL);
+        token(call.getParen());
+        node(call.getCallee());
+        exprs(call.getArgs());
+        return null;
+    }
+
+    @Override
+    public Void accept(Literal literal) {
+        out.write(LITERAL);
+        value(literal.getValue());
+        return null;
+    }
+
+    @Override
+    public Void accept(Unary unary) {
+        out.write(UNARY);
+        token(unary.getOperator());
+        node(unary.getRight());
+        return null;
+    }
+
+    @Override
+    public Void accept(Ternary ternary) {
+        out.write(TERNARY);
+        node(ternary.getCondition());
+        node(ternary.getOnTrue());
+        node(ternary.getOnFalse());
+        return null;
+    }
+
+    @Override
+    public Void accept(Group group) {
+        out.write(GROUP);
+        node(group.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void accept(ExprStmt exprStmt) {
+        out.write(EXPR_STMT);
+        node(exprStmt.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void accept(Var var) {
+        out.write(VAR);
+        token(var.getName());
+        node(var.getInitializer());
+        slot(var.getSlot());
+        return null;
+    }
+
+    @Override
+    public Void accept(Variable variable) {
+        out.write(VARIABLE);
+        token(variable.getName());
+        slot(variable.getSlot());
+        return null;
+    }
+
+    @Override
+    public Void accept(Block block) {
+        out.write(block.isScoped() ? BLOCK : PLAIN_BLOCK);
+        stmts(block.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void accept(If anIf) {
+        out.write(IF);
+        node(anIf.getCondition());
+        node(anIf.getOnTrue());
+        node(anIf.getOnFalse());
+        return null;
+    }
+
+    @Override
+    public Void accept(Logic logic) {
+        out.write(LOGIC);
+        token(logic.getOperator());
+        node(logic.getLeft());
+        node(logic.getRight());
+        return null;
+    }
+
+    @Override
+    public Void accept(While aWhile) {
+        out.write(WHILE);
+        node(aWhile.getCondition());
+        node(aWhile.getBody());
+        return null;
+    }
+
+    @Override
+    public Void accept(Fn fn) {
+        out.write(FN);
+        token(fn.getName());
+        varint(fn.getParams().size());
+        fn.getParams().forEach(this::token);
+        slot(fn.getSlot());
+        slots(fn.getParamSlots());
+        slots(fn.getCaptures());
+        stmts(fn.getBody());
+        return null;
+    }
+
+    @Override
+    public Void accept(Return aReturn) {
+        out.write(aReturn.isTail() ? TAIL_RETURN : RETURN);
+        node(aReturn.getValue());
+        return null;
+    }
+
+    @Override
+    public Void accept(ClassStmt aClass) {
+        out.write(CLASS);
+        token(aClass.getName());
+        node(aClass.getSuperclass());
+        slot(aClass.getSlot());
+        stmts(aClass.getMethods());
+        return null;
+    }
+
+    @Override
+    public Void accept(Get get) {
+        out.write(GET);
+        token(get.getName());
+        node(get.getObject());
+        return null;
+    }
+
+    @Override
+    public Void accept(Set set) {
+        out.write(SET);
+        token(set.getName());
+        node(set.getObject());
+        node(set.getValue());
+        return null;
+    }
+
+    @Override
+    public Void accept(Self self) {
+        out.write(SELF);
+        token(self.getKeyword());
+        slot(self.getSlot());
+        return null;
+    }
+
+    @Override
+    public Void accept(Super aSuper) {
+        out.write(SUPER);
+        token(aSuper.getKeyword());
+        token(aSuper.getMethod());
+        slot(aSuper.getSlot());
+        slot(aSuper.getReceiver());
+        return null;
+    }
+
+    @Override
+    public Void accept(BreakStmt breakStmt) {
+        out.write(BREAK);
+        token(breakStmt.getKeyword());
+        return null;
+    }
+
+    @Override
+    public Void accept(ContinueStmt continueStmt) {
+        out.write(CONTINUE);
+        token(continueStmt.getKeyword());
+        return null;
+    }
+
+    @Override
+    public Void accept(For aFor) {
+        out.write(FOR);
+        node(aFor.getInitializer());
+        node(aFor.getCondition());
+        node(aFor.getIncrement());
+        node(aFor.getBody());
+        return null;
+    }
+
+    private void node(Expr expr) {
+        if (expr == null) out.write(NULL);
+        else expr.accept(this);
+    }
+
+    private void node(Stmt stmt) {
+        if (stmt == null) out.write(NULL);
+        else stmt.accept(this);
+    }
+
+    private void stmts(List<? extends Stmt> statements) {
+        varint(statements.size());
+        statements.forEach(this::node);
+    }
+
+    private void exprs(List<Expr> expressions) {
+        varint(expressions.size());
+        expressions.forEach(this::node);
+    }
+
+    private void token(Token token) {
+        out.write(token.getType().ordinal());
+        string(token.getLexeme());
+        value(token.getLiteral());
+        // positions are written relative to the previous token, mostly a single byte
+        zigzag(token.getLine() - line);
+        zigzag(token.getPos() - pos);
+        line = token.getLine();
+        pos = token.getPos();
+    }
+
+    // 0 for an unresolved node, 1 for a global, 2 for a captured value and depth + 3 for a local, the last two
+    // followed by the index with the boxed flag in its lowest bit
+    private void slot(Slot slot) {
+        if (slot == null) varint(0);
+        else if (slot.isGlobal()) varint(1);
+        else {
+            varint(slot.isCaptured() ? 2 : slot.getDepth() + 3);
+            varint(slot.getIndex() << 1 | (slot.isBoxed() ? 1 : 0));
+        }
+    }
+
+    private void slots(List<Slot> slots) {
+        if (slots == null) varint(0);
+        else {
+            varint(slots.size() + 1);
+            slots.forEach(this::slot);
+        }
+    }
+
+    private void value(Object value) {
+        if (value == null) out.write(VALUE_NULL);
+        else if (value instanceof Boolean b) out.write(b ? VALUE_TRUE : VALUE_FALSE);
+        else if (value instanceof Double d) {
+            out.write(VALUE_NUMBER);
+            long bits = Double.doubleToRawLongBits(d);
+            for (int i = 56; i >= 0; i -= 8) out.write((int) (bits >>> i));
+        } else if (value instanceof String s) {
+            out.write(VALUE_STRING);
+            string(s);
+        } else throw new RuntimeException("Cannot write literal '%s'.".formatted(value));
+    }
+
+    // the first occurrence of a string gets the next index and is followed by its bytes
+    private void string(String s) {
+        Integer index = strings.get(s);
+        if (index != null) {
+            varint(index);
+            return;
+        }
+        varint(strings.size());
+        strings.put(s, strings.size());
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        varint(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private void zigzag(int value) {
+        varint(value << 1 ^ value >> 31);
+    }
+
+    private void varint(int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
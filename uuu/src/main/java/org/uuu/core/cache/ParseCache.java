@@ -0,0 +1,94 @@
+package org.uuu.core.cache;
+
+import org.uuu.core.analyser.ScopeResolver;
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.scanner.Scanner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+// Resolved programs stored on disk under the SHA-256 of their source. An unchanged script is read back
+// without scanning, parsing or resolving it again.
+public class ParseCache {
+    // bumped whenever the tree or its serialized form changes, older entries are then ignored
+    private static final byte[] MAGIC = {'U', 'U', 'U', 'C', 0, 4};
+
+    private final Path directory;
+
+    public ParseCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // the uuu.cache system property overrides the default location in the user's home
+    public static ParseCache standard() {
+        String directory = System.getProperty("uuu.cache");
+        return new ParseCache(directory != null ? Path.of(directory)
+                                                : Path.of(System.getProperty("user.home"), ".cache", "uuu"));
+    }
+
+    public List<Stmt> load(Path source) throws IOException {
+        byte[] code = Files.readAllBytes(source);
+        Path entry = directory.resolve(key(code) + ".ast");
+        List<Stmt> cached = read(entry);
+        if (cached != null) return cached;
+
+        List<Stmt> statements = Parser.parse(Scanner.stream(new String(code, StandardCharsets.UTF_8)));
+        ScopeResolver.resolve(statements);
+        write(entry, statements);
+        return statements;
+    }
+
+    // a missing, stale or damaged entry is a miss
+    private List<Stmt> read(Path entry) {
+        try {
+            byte[] bytes = Files.readAllBytes(entry);
+            if (bytes.length < MAGIC.length || !Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) return null;
+            return AstReader.read(bytes, MAGIC.length);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Written next to the entry and moved into place, concurrent runs of the same script never see half
+    // an entry. Failing to write, the serializer included, only costs the next run a parse.
+    private void write(Path entry, List<Stmt> statements) {
+        Path temp = null;
+        try {
+            byte[] tree = AstWriter.write(statements);
+            byte[] bytes = Arrays.copyOf(MAGIC, MAGIC.length + tree.length);
+            System.arraycopy(tree, 0, bytes, MAGIC.length, tree.length);
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, "entry", ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Warning: could not write parse cache entry: " + e.getMessage());
+            if (temp != null) delete(temp);
+        }
+    }
+
+    private static void delete(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            System.err.println("Warning: could not delete " + temp + ": " + e.getMessage());
+        }
+    }
+
+    static String key(byte[] code) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(code));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
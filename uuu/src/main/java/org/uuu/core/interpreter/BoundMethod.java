@@ -0,0 +1,45 @@
+package org.uuu.core.interpreter;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class BoundMethod implements Callable {
+    private final Instance receiver;
+    private final Function method;
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] args) {
+        return method.invoke(interpreter, receiver, args);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return method.invoke0(interpreter, receiver);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        return method.invoke1(interpreter, receiver, a);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        return method.invoke2(interpreter, receiver, a, b);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return method.invoke3(interpreter, receiver, a, b, c);
+    }
+
+    @Override
+    public int arity() {
+        return method.arity();
+    }
+
+    public String toString() {
+        return method.toString();
+    }
+}
@@ -1,17 +1,34 @@
 package org.uuu.core.interpreter;
 
 import org.uuu.core.ast.statement.Fn;
-import org.uuu.core.runtime.Environment;
-
-import java.util.List;
 
 public interface Callable {
-    Object call(Interpreter interpreter, List<Object> args);
+    Object[] NO_ARGS = new Object[0];
+
+    Object call(Interpreter interpreter, Object[] args);
+
+    // Calls with up to three arguments pass them directly, a callable overrides these to take them without an array.
+    // The caller has checked the arity already.
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, NO_ARGS);
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, new Object[]{a});
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, new Object[]{a, b});
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, new Object[]{a, b, c});
+    }
 
     int arity();
 
-    public static Function function(Fn declaration, Environment closure) {
-        if (declaration.getLexeme().equals("init")) return new InitFunction(declaration, closure);
-        else return new Function(declaration, closure);
+    public static Function function(Fn declaration, Object[] captures) {
+        if (declaration.getLexeme().equals("init")) return new InitFunction(declaration, captures);
+        else return new Function(declaration, captures, null);
     }
 }
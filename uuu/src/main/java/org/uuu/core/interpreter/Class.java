@@ -1,41 +1,77 @@
 package org.uuu.core.interpreter;
 
-import lombok.Data;
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
+import org.uuu.core.runtime.Shape;
 import org.uuu.core.scanner.Token;
 
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 
-@Data
-@RequiredArgsConstructor
+@Getter
 public class Class implements Callable {
     private final Token name;
     private final Class superclass;
     private final Map<String, Function> methods;
+    // own and inherited methods flattened into one table, overrides replace inherited entries
+    private final Map<String, Function> methodTable;
+    private final Function init;
+    private final Shape shape = Shape.root();
+
+    public Class(Token name, Class superclass, Map<String, Function> methods) {
+        this.name = name;
+        this.superclass = superclass;
+        this.methods = methods;
+        this.methodTable = superclass == null ? new HashMap<>() : new HashMap<>(superclass.methodTable);
+        this.methodTable.putAll(methods);
+        this.init = methodTable.get("init");
+    }
 
     public String toString() {
         return "<class: %s>".formatted(name.getLexeme());
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> args) {
+    public Object call(Interpreter interpreter, Object[] args) {
+        Instance instance = new Instance(this);
+        if (init != null) init.invoke(interpreter, instance, args);
+        return instance;
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        Instance instance = new Instance(this);
+        if (init != null) init.invoke0(interpreter, instance);
+        return instance;
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        Instance instance = new Instance(this);
+        init.invoke1(interpreter, instance, a);
+        return instance;
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        Instance instance = new Instance(this);
+        init.invoke2(interpreter, instance, a, b);
+        return instance;
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
         Instance instance = new Instance(this);
-        Function init = findMethod("init");
-        if (init != null) init.bind(instance).call(interpreter, args);
+        init.invoke3(interpreter, instance, a, b, c);
         return instance;
     }
 
     @Override
     public int arity() {
-        Function init = findMethod("init");
         return init == null ? 0 : init.arity();
     }
 
     public Function findMethod(String name) {
-        if (methods.containsKey(name)) return methods.get(name);
-        if (superclass != null) return superclass.findMethod(name);
-        return null;
+        return methodTable.get(name);
     }
 
     public Function findMethod(Token field) {
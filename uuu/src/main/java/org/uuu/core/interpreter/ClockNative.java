@@ -1,10 +1,13 @@
 package org.uuu.core.interpreter;
 
-import java.util.List;
-
 public class ClockNative implements Callable {
     @Override
-    public Object call(Interpreter interpreter, List<Object> args) {
+    public Object call(Interpreter interpreter, Object[] args) {
+        return call0(interpreter);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
         return System.currentTimeMillis();
     }
 
@@ -1,32 +1,136 @@
 package org.uuu.core.interpreter;
 
-import lombok.Data;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.uuu.core.ast.statement.Fn;
+import org.uuu.core.jit.CompiledFunction;
+import org.uuu.core.jit.Jit;
+import org.uuu.core.runtime.Cell;
+import org.uuu.core.runtime.Completion;
 import org.uuu.core.runtime.Environment;
-import org.uuu.core.runtime.ReturnVal;
-import org.uuu.core.scanner.Token;
+import org.uuu.core.runtime.Slot;
 
-import java.util.List;
-
-@Data
+// Equal only to itself: two closures of one declaration are different values, and the call counter and compiled
+// code change as the program runs.
+@Getter
 @RequiredArgsConstructor
 public class Function implements Callable {
     private final Fn declaration;
-    private final Environment closure;
+    private final Object[] captures;
+    // the global environment for a function declared in it, where the compiled code finds its own binding
+    private final Environment globals;
+    private int calls;
+    private CompiledFunction compiled;
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] args) {
+        return complete(interpreter, enter(interpreter, null, args));
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return invoke0(interpreter, null);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        return invoke1(interpreter, null, a);
+    }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> args) {
-        Environment env = new Environment(closure);
-        for (int i = 0; i < args.size(); i++) env.define(declaration.getParams().get(i), args.get(i));
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        return invoke2(interpreter, null, a, b);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return invoke3(interpreter, null, a, b, c);
+    }
+
+    public Object invoke(Interpreter interpreter, Instance self, Object[] args) {
+        return complete(interpreter, enter(interpreter, self, args));
+    }
+
+    // the arguments go straight into the frame, only a call the jit may take needs them in an array
+    public Object invoke0(Interpreter interpreter, Instance self) {
+        if (compilable(interpreter, self)) return invoke(interpreter, self, NO_ARGS);
+        return complete(interpreter, run(interpreter, self, frame(interpreter, self)));
+    }
+
+    public Object invoke1(Interpreter interpreter, Instance self, Object a) {
+        if (compilable(interpreter, self)) return invoke(interpreter, self, new Object[]{a});
+        Environment env = frame(interpreter, self);
+        bind(env, 0, a);
+        return complete(interpreter, run(interpreter, self, env));
+    }
+
+    public Object invoke2(Interpreter interpreter, Instance self, Object a, Object b) {
+        if (compilable(interpreter, self)) return invoke(interpreter, self, new Object[]{a, b});
+        Environment env = frame(interpreter, self);
+        bind(env, 0, a);
+        bind(env, 1, b);
+        return complete(interpreter, run(interpreter, self, env));
+    }
+
+    public Object invoke3(Interpreter interpreter, Instance self, Object a, Object b, Object c) {
+        if (compilable(interpreter, self)) return invoke(interpreter, self, new Object[]{a, b, c});
+        Environment env = frame(interpreter, self);
+        bind(env, 0, a);
+        bind(env, 1, b);
+        bind(env, 2, c);
+        return complete(interpreter, run(interpreter, self, env));
+    }
+
+    // runs the body, a call it makes in tail position is returned to the caller instead of being made here
+    Object enter(Interpreter interpreter, Instance self, Object[] args) {
+        if (compilable(interpreter, self)) {
+            if (compiled == null && ++calls == Jit.THRESHOLD) compiled = Jit.compile(this);
+            if (compiled != null && compiled.accepts(args)) return compiled.call(args);
+        }
+        Environment env = frame(interpreter, self);
+        for (int i = 0; i < args.length; i++) bind(env, i, args[i]);
+        return run(interpreter, self, env);
+    }
+
+    private static boolean compilable(Interpreter interpreter, Instance self) {
+        return self == null && interpreter.isTiered();
+    }
+
+    // every call made by the interpreter takes a frame, so this is where function entries poll for a safepoint
+    private Environment frame(Interpreter interpreter, Instance self) {
+        interpreter.poll();
+        // a lazy body is parsed before its first frame is filled, that resolves the parameter slots
+        declaration.getBody();
+        Environment env = interpreter.frame(captures, declaration.getParams().size() + (self == null ? 4 : 5));
+        if (self != null) env.define(0, self);
+        return env;
+    }
+
+    private void bind(Environment env, int param, Object arg) {
+        Slot slot = declaration.getParamSlots().get(param);
+        env.define(slot.getIndex(), slot.isBoxed() ? new Cell(arg) : arg);
+    }
+
+    // executes the body in the frame holding self and the arguments, the frame goes back to the pool after
+    Object run(Interpreter interpreter, Instance self, Environment env) {
+        Object completion;
         try {
-            interpreter.executeBlock(declaration.getBody(), env);
-        } catch (ReturnVal e) {
-            return e.getValue();
+            completion = interpreter.executeBlock(declaration.getBody(), env);
+        } finally {
+            interpreter.release(env);
         }
+        if (completion == Completion.RETURN) return interpreter.takeReturnValue();
+        if (completion != null)
+            throw new RuntimeException("Cannot use '%s' outside of a loop.".formatted(completion.toString().toLowerCase()));
         return null;
     }
 
+    // tail calls are made one after another from here, so tail recursion runs in constant stack
+    static Object complete(Interpreter interpreter, Object result) {
+        while (result instanceof TailCall call) result = call.method().enter(interpreter, call.self(), call.args());
+        return result;
+    }
+
     @Override
     public int arity() {
         return declaration.getParams().size();
@@ -36,9 +140,7 @@ public class Function implements Callable {
         return "<fn:" + declaration.getName().getLexeme() + ">";
     }
 
-    public Function bind(Instance instance) {
-        Environment env = new Environment(closure);
-        env.define(Token.ofIdent("self", 0, 0), instance);
-        return new Function(declaration, env);
+    public Callable bind(Instance instance) {
+        return new BoundMethod(instance, this);
     }
 }
@@ -3,16 +3,15 @@ package org.uuu.core.interpreter;
 import org.uuu.core.ast.statement.Fn;
 import org.uuu.core.runtime.Environment;
 
-import java.util.List;
-
 public class InitFunction extends Function {
-    public InitFunction(Fn declaration, Environment closure) {
-        super(declaration, closure);
+    public InitFunction(Fn declaration, Object[] captures) {
+        super(declaration, captures, null);
     }
 
+    // an initializer reached by a tail call still gives its instance back
     @Override
-    public Object call(Interpreter interpreter, List<Object> args) {
-        super.call(interpreter, args);
-        return getClosure().get("self", 0);
+    Object run(Interpreter interpreter, Instance self, Environment env) {
+        complete(interpreter, super.run(interpreter, self, env));
+        return self;
     }
 }
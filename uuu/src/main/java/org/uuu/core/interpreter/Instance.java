@@ -1,19 +1,32 @@
 package org.uuu.core.interpreter;
 
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
+import org.uuu.core.runtime.Shape;
 import org.uuu.core.scanner.Token;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+
+import static org.uuu.core.runtime.Unboxed.NUMBER;
 
-@RequiredArgsConstructor
 public class Instance {
+    @Getter
     private final Class aClass;
+    @Getter
+    private Shape shape;
+    private Object[] fields;
+    // the values of fields holding NUMBER
+    private double[] numbers;
 
-    private final Map<String, Object> fields = new HashMap<>();
+    public Instance(Class aClass) {
+        this.aClass = aClass;
+        this.shape = aClass.getShape();
+        this.fields = new Object[Math.max(shape.size(), 4)];
+        this.numbers = new double[fields.length];
+    }
 
     public Object get(Token field) {
-        if (fields.containsKey(field.getLexeme())) return fields.get(field.getLexeme());
+        int i = shape.indexOf(field.getLexeme());
+        if (i >= 0) return getField(i);
 
         Function method = aClass.findMethod(field);
         if (method != null) return method.bind(this);
@@ -27,6 +40,39 @@ public class Instance {
     }
 
     public void set(Token name, Object val) {
-        fields.put(name.getLexeme(), val);
+        int i = shape.indexOf(name.getLexeme());
+        if (i >= 0) fields[i] = val;
+        else addField(shape.with(name.getLexeme()), val);
+    }
+
+    public Object getField(int slot) {
+        Object value = fields[slot];
+        return value == NUMBER ? (Object) numbers[slot] : value;
+    }
+
+    public double getNumber(int slot) {
+        Object value = fields[slot];
+        return value == NUMBER ? numbers[slot] : (double) value;
+    }
+
+    public void setField(int slot, Object val) {
+        fields[slot] = val;
+    }
+
+    public void setNumber(int slot, double number) {
+        fields[slot] = NUMBER;
+        numbers[slot] = number;
+    }
+
+    // next must be the transition of the current shape by one field, the new field's slot is returned
+    public int addField(Shape next, Object val) {
+        int slot = shape.size();
+        if (slot == fields.length) {
+            fields = Arrays.copyOf(fields, slot * 2);
+            numbers = Arrays.copyOf(numbers, slot * 2);
+        }
+        fields[slot] = val;
+        shape = next;
+        return slot;
     }
 }
@@ -1,13 +1,14 @@
 package org.uuu.core.interpreter;
 
+import lombok.Getter;
 import org.uuu.core.analyser.ScopeResolver;
 import org.uuu.core.ast.Visitor;
 import org.uuu.core.ast.expression.*;
 import org.uuu.core.ast.statement.*;
-import org.uuu.core.runtime.Break;
-import org.uuu.core.runtime.Continue;
-import org.uuu.core.runtime.Environment;
-import org.uuu.core.runtime.ReturnVal;
+import org.uuu.core.optimizer.ConstantFolder;
+import org.uuu.core.optimizer.Optimizer;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.runtime.*;
 import org.uuu.core.scanner.Token;
 import org.uuu.core.scanner.TokenType;
 
@@ -15,81 +16,356 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
+
+import static org.uuu.core.runtime.Unboxed.NUMBER;
 
 public class Interpreter implements Visitor<Object> {
 
     private final List<Stmt> statements;
 
-    private final Map<Expr, Integer> LOCALS = new HashMap<>();
     private final Environment GLOBAL_ENV = new Environment();
     Environment env = GLOBAL_ENV;
+    private final EnvironmentPool pool = new EnvironmentPool();
+    private Object returnValue;
+    private boolean tailPosition = false;
+    // the value of the last expression that tagged returned as NUMBER
+    private double number;
+    // counts down at loop back-edges and function entries, the safepoint runs when it reaches zero
+    private int fuel = Integer.MAX_VALUE;
+    private int slice = Integer.MAX_VALUE;
+    private Safepoint safepoint;
+    @Getter
+    private final boolean tiered;
 
     public Interpreter(List<Stmt> statements) {
+        this(statements, false);
+    }
+
+    // in tiered mode hot numeric functions are compiled to JVM bytecode
+    public Interpreter(List<Stmt> statements, boolean tiered) {
+        this(statements, tiered, Optimizer.DEFAULT);
+    }
+
+    public Interpreter(List<Stmt> statements, boolean tiered, Optimizer optimizer) {
+        this(statements, tiered, true, optimizer);
+    }
+
+    private Interpreter(List<Stmt> statements, boolean tiered, boolean resolve, Optimizer optimizer) {
+        this.tiered = tiered;
         GLOBAL_ENV.define("clock", new ClockNative());
         GLOBAL_ENV.define("print", new PrintNative());
-        this.statements = statements;
-        ScopeResolver scopeResolver = new ScopeResolver(this);
-        statements.forEach(e -> e.accept(scopeResolver));
+        if (resolve) ScopeResolver.resolve(statements);
+        this.statements = optimizer.optimize(statements);
+    }
+
+    // for statements that already carry their slots, e.g. read back from the parse cache
+    public static Interpreter resolved(List<Stmt> statements, boolean tiered) {
+        return resolved(statements, tiered, Optimizer.DEFAULT);
+    }
+
+    public static Interpreter resolved(List<Stmt> statements, boolean tiered, Optimizer optimizer) {
+        return new Interpreter(statements, tiered, false, optimizer);
     }
 
     public static void interpret(List<Stmt> statements) {
         new Interpreter(statements).interpret();
     }
 
+    public static void interpret(List<Stmt> statements, boolean tiered) {
+        new Interpreter(statements, tiered).interpret();
+    }
+
+    // Each top-level statement runs as soon as it is parsed, before the rest of the input is read. Only constants
+    // are folded, inlining needs to see the whole program.
+    public static void interpret(Parser parser, boolean tiered) {
+        Interpreter interpreter = new Interpreter(List.of(), tiered);
+        ScopeResolver resolver = new ScopeResolver();
+        for (Stmt statement = parser.next(); statement != null; statement = parser.next()) {
+            resolver.resolve(statement);
+            Stmt folded = ConstantFolder.optimize(statement);
+            if (folded != null) interpreter.execute(folded);
+        }
+    }
+
+    // the safepoint runs after every slice back-edges and calls, so a script that never ends can still be paused
+    public void setSafepoint(Safepoint safepoint, int slice) {
+        if (slice <= 0) throw new RuntimeException("Slice must be positive, got %d.".formatted(slice));
+        this.safepoint = safepoint;
+        this.slice = slice;
+        this.fuel = slice;
+    }
+
+    void poll() {
+        if (--fuel == 0) refuel();
+    }
+
+    private void refuel() {
+        fuel = slice;
+        if (safepoint != null) safepoint.reached(this);
+    }
+
+    public Environment getGlobals() {
+        return GLOBAL_ENV;
+    }
+
     public Interpreter interpret() {
-        statements.forEach(e -> e.accept(this));
+        statements.forEach(this::execute);
         return this;
     }
 
+    private void execute(Stmt statement) {
+        Object completion = statement.accept(this);
+        if (completion == Completion.RETURN) throw new RuntimeException("Cannot return from top-level code.");
+        if (completion != null) throw new RuntimeException("Cannot use '%s' outside of a loop."
+                                                                   .formatted(completion.toString().toLowerCase()));
+    }
+
     @Override
     public Object accept(Assign assign) {
-        Object value = evaluate(assign.getValue());
-        Integer d = LOCALS.get(assign);
-        if (d == null) {
-            Token name = assign.getName();
-            throw new RuntimeException("Undefined variable '%s' at %d|%d".formatted(name.getLexeme(),
-                                                                                    name.getLine(), name.getPos()));
-        }
-        env.assign(assign.getName(), value, d);
+        Object value = assign(assign);
+        return value == NUMBER ? (Object) number : value;
+    }
+
+    // a number is stored unboxed, it is boxed only if the assignment is used as a value
+    private Object assign(Assign assign) {
+        Object value = tagged(assign.getValue());
+        Slot slot = assign.getSlot();
+        if (slot.isGlobal()) store(global(assign.getName(), slot), value);
+        else if (slot.isBoxed()) store((Cell) raw(env, slot), value);
+        else if (value == NUMBER) env.assignNumber(slot.getDepth(), slot.getIndex(), number);
+        else env.assign(slot.getDepth(), slot.getIndex(), value);
         return value;
     }
 
+    private void store(Cell cell, Object value) {
+        if (value == NUMBER) cell.setNumber(number);
+        else cell.setValue(value);
+    }
+
+    // Evaluates expr for a store. A number is not boxed, NUMBER is returned instead and the value is left in number.
+    private Object tagged(Expr expr) {
+        if (numeric(expr)) {
+            number = evaluateDouble(expr);
+            return NUMBER;
+        }
+        if (expr instanceof Group group) return tagged(group.getExpression());
+        if (expr instanceof Variable variable && variable.getSlot() != null && !variable.getSlot().isCaptured() &&
+            !variable.getSlot().isBoxed()) {
+            Slot slot = variable.getSlot();
+            if (slot.isGlobal()) {
+                Cell cell = global(variable.getName(), slot);
+                if (!cell.isNumber()) return tag(cell.getValue());
+                number = cell.getNumber();
+                return NUMBER;
+            }
+            // arguments are bound boxed, they are tagged here like the numbers stored unboxed
+            Object value = env.getTagged(slot.getDepth(), slot.getIndex());
+            if (value != NUMBER) return tag(value);
+            number = env.getNumber(slot.getDepth(), slot.getIndex());
+            return NUMBER;
+        }
+        if (expr instanceof Binary binary && binary.getOperator().getType() == TokenType.PLUS) return sum(binary);
+        return tag(evaluate(expr));
+    }
+
+    private Object tag(Object value) {
+        if (!(value instanceof Double d)) return value;
+        number = d;
+        return NUMBER;
+    }
+
     @Override
     public Object accept(Binary binary) {
         return switch (binary.getOperator().getType()) {
-            case PLUS -> plus(evaluate(binary.getLeft()), evaluate(binary.getRight()));
-            case STAR -> (double) evaluate(binary.getLeft()) * (double) evaluate(binary.getRight());
-            case SLASH -> (double) evaluate(binary.getLeft()) / (double) evaluate(binary.getRight());
-            case MINUS -> (double) evaluate(binary.getLeft()) - (double) evaluate(binary.getRight());
-            case GREATER -> (double) evaluate(binary.getLeft()) > (double) evaluate(binary.getRight());
-            case GREATER_EQUAL -> (double) evaluate(binary.getLeft()) >= (double) evaluate(binary.getRight());
-            case LESS -> (double) evaluate(binary.getLeft()) < (double) evaluate(binary.getRight());
-            case LESS_EQUAL -> (double) evaluate(binary.getLeft()) <= (double) evaluate(binary.getRight());
-            case EQUAL_EQUAL -> Objects.equals(evaluate(binary.getLeft()), evaluate(binary.getRight()));
-            case BANG_EQUAL -> !Objects.equals(evaluate(binary.getLeft()), evaluate(binary.getRight()));
+            case PLUS -> {
+                Object value = sum(binary);
+                yield value == NUMBER ? (Object) number : value;
+            }
+            case STAR, SLASH, MINUS -> evaluateDouble(binary);
+            case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, EQUAL_EQUAL, BANG_EQUAL -> evaluateBoolean(binary);
             default -> null;
         };
     }
 
+    // The type feedback of a sum decides how its operands are evaluated: a DOUBLE sum reads them unboxed, any other
+    // as objects. When the guard fails the sum turns GENERIC and completes with the values it already has, so no
+    // operand is evaluated twice. The result is tagged.
+    private Object sum(Binary binary) {
+        Specialization state = binary.getSpecialization();
+        if (state == Specialization.DOUBLE) {
+            Object left = tagged(binary.getLeft());
+            double l = number;
+            Object right = tagged(binary.getRight());
+            if (left == NUMBER && right == NUMBER) {
+                number = l + number;
+                return NUMBER;
+            }
+            binary.setSpecialization(Specialization.GENERIC);
+            return tag(plus(left == NUMBER ? (Object) l : left, right == NUMBER ? (Object) number : right));
+        }
+        Object a = evaluate(binary.getLeft());
+        Object b = evaluate(binary.getRight());
+        if (state == Specialization.STRING) {
+            if (a instanceof String as && b instanceof String bs) return as + bs;
+            binary.setSpecialization(Specialization.GENERIC);
+        } else if (state == Specialization.UNINITIALIZED) binary.setSpecialization(specialize(a, b));
+        return tag(plus(a, b));
+    }
+
+    private static Specialization specialize(Object a, Object b) {
+        if (a instanceof Double && b instanceof Double) return Specialization.DOUBLE;
+        if (a instanceof String && b instanceof String) return Specialization.STRING;
+        return Specialization.GENERIC;
+    }
+
     private Object plus(Object a, Object b) {
         if (a instanceof Double ad && b instanceof Double bd) return ad + bd;
         if (a instanceof String as && b instanceof String bs) return as + bs;
         return null;
     }
 
+    // Arithmetic chains stay unboxed, only the outermost result is boxed by the caller.
+    private double evaluateDouble(Expr expr) {
+        if (expr instanceof Binary binary) {
+            switch (binary.getOperator().getType()) {
+                case PLUS:
+                    return evaluateDouble(binary.getLeft()) + evaluateDouble(binary.getRight());
+                case MINUS:
+                    return evaluateDouble(binary.getLeft()) - evaluateDouble(binary.getRight());
+                case STAR:
+                    return evaluateDouble(binary.getLeft()) * evaluateDouble(binary.getRight());
+                case SLASH:
+                    return evaluateDouble(binary.getLeft()) / evaluateDouble(binary.getRight());
+            }
+        } else if (expr instanceof Unary unary && unary.getOperator().getType() == TokenType.MINUS) {
+            return -evaluateDouble(unary.getRight());
+        } else if (expr instanceof Group group) return evaluateDouble(group.getExpression());
+        else if (expr instanceof Variable variable && variable.getSlot() != null) return number(variable);
+        else if (expr instanceof Get get) {
+            Instance instance = instance(get);
+            int entry = lookUpProperty(get, instance);
+            int slot = get.getCache().slot(entry);
+            if (slot >= 0) return instance.getNumber(slot);
+            // the receiver was evaluated already, it must not run again to fail the cast
+            throw new RuntimeException("Operand '%s' is a method, not a number.".formatted(get.getName().getLexeme()));
+        }
+        return (double) evaluate(expr);
+    }
+
+    private double number(Variable variable) {
+        Slot slot = variable.getSlot();
+        if (slot.isGlobal()) return global(variable.getName(), slot).getNumber();
+        if (slot.isBoxed()) return ((Cell) raw(env, slot)).getNumber();
+        if (slot.isCaptured()) return (double) env.captured(slot.getIndex());
+        return env.getNumber(slot.getDepth(), slot.getIndex());
+    }
+
+    private boolean evaluateBoolean(Expr expr) {
+        if (expr instanceof Binary binary) {
+            switch (binary.getOperator().getType()) {
+                case GREATER:
+                    return evaluateDouble(binary.getLeft()) > evaluateDouble(binary.getRight());
+                case GREATER_EQUAL:
+                    return evaluateDouble(binary.getLeft()) >= evaluateDouble(binary.getRight());
+                case LESS:
+                    return evaluateDouble(binary.getLeft()) < evaluateDouble(binary.getRight());
+                case LESS_EQUAL:
+                    return evaluateDouble(binary.getLeft()) <= evaluateDouble(binary.getRight());
+                case EQUAL_EQUAL:
+                    return Objects.equals(evaluate(binary.getLeft()), evaluate(binary.getRight()));
+                case BANG_EQUAL:
+                    return !Objects.equals(evaluate(binary.getLeft()), evaluate(binary.getRight()));
+            }
+        } else if (expr instanceof Unary unary && unary.getOperator().getType() == TokenType.BANG) {
+            return !evaluateBoolean(unary.getRight());
+        } else if (expr instanceof Group group) return evaluateBoolean(group.getExpression());
+        return (boolean) evaluate(expr);
+    }
+
+    // Expressions that can only produce a number or fail.
+    private static boolean numeric(Expr expr) {
+        if (expr instanceof Literal literal) return literal.getValue() instanceof Double;
+        if (expr instanceof Group group) return numeric(group.getExpression());
+        if (expr instanceof Unary unary) return unary.getOperator().getType() == TokenType.MINUS;
+        if (expr instanceof Binary binary) return switch (binary.getOperator().getType()) {
+            case MINUS, STAR, SLASH -> true;
+            case PLUS -> numeric(binary.getLeft()) && numeric(binary.getRight());
+            default -> false;
+        };
+        return false;
+    }
+
     @Override
     public Object accept(Call call) {
-        Object callee = call.getCallee().accept(this);
-        List<Object> args = call.getArgs().stream().map(e -> e.accept(this)).toList();
-        if (callee instanceof Callable callable) {
-            if (callable.arity() != args.size())
-                throw new RuntimeException("Expected %d arguments, got %d.".formatted(callable.arity(), args.size()));
-            return callable.call(this, args);
+        // only the returned call is in tail position, not the calls in its callee and arguments
+        boolean tail = tailPosition;
+        tailPosition = false;
+        // method calls skip creating a bound method that would be invoked right away
+        if (call.getCallee() instanceof Get get) return invoke(call, get, tail);
+        if (call.getCallee() instanceof Super aSuper) {
+            Function method = superMethod(aSuper);
+            return invoke(checked(call, method), superReceiver(aSuper), call, tail);
         }
+        Object callee = call.getCallee().accept(this);
+        if (callee instanceof Callable callable) return call(checked(call, callable), call, tail);
         throw new RuntimeException(callee.getClass().getName() + " is not a function.");
     }
 
+    // A tail call to a script function is left to the caller of the function returning it, see Function.complete.
+    // Up to three arguments are evaluated straight into the call, without an array.
+    private Object call(Callable callable, Call call, boolean tail) {
+        if (tail && callable instanceof Function function) return new TailCall(function, null, arguments(call));
+        if (tail && callable instanceof BoundMethod bound)
+            return new TailCall(bound.getMethod(), bound.getReceiver(), arguments(call));
+        List<Expr> args = call.getArgs();
+        return switch (args.size()) {
+            case 0 -> callable.call0(this);
+            case 1 -> callable.call1(this, evaluate(args.get(0)));
+            case 2 -> callable.call2(this, evaluate(args.get(0)), evaluate(args.get(1)));
+            case 3 -> callable.call3(this, evaluate(args.get(0)), evaluate(args.get(1)), evaluate(args.get(2)));
+            default -> callable.call(this, arguments(call));
+        };
+    }
+
+    private Object invoke(Function method, Instance self, Call call, boolean tail) {
+        if (tail) return new TailCall(method, self, arguments(call));
+        List<Expr> args = call.getArgs();
+        return switch (args.size()) {
+            case 0 -> method.invoke0(this, self);
+            case 1 -> method.invoke1(this, self, evaluate(args.get(0)));
+            case 2 -> method.invoke2(this, self, evaluate(args.get(0)), evaluate(args.get(1)));
+            case 3 -> method.invoke3(this, self, evaluate(args.get(0)), evaluate(args.get(1)), evaluate(args.get(2)));
+            default -> method.invoke(this, self, arguments(call));
+        };
+    }
+
+    private Object invoke(Call call, Get get, boolean tail) {
+        Instance instance = instance(get);
+        int entry = lookUpProperty(get, instance);
+        int slot = get.getCache().slot(entry);
+        if (slot >= 0) {
+            Object callee = instance.getField(slot);
+            if (!(callee instanceof Callable callable))
+                throw new RuntimeException(callee.getClass().getName() + " is not a function.");
+            return call(checked(call, callable), call, tail);
+        }
+        Function method = (Function) get.getCache().target(entry);
+        return invoke(checked(call, method), instance, call, tail);
+    }
+
+    private Object[] arguments(Call call) {
+        List<Expr> exprs = call.getArgs();
+        Object[] args = new Object[exprs.size()];
+        for (int i = 0; i < args.length; i++) args[i] = exprs.get(i).accept(this);
+        return args;
+    }
+
+    private static <T extends Callable> T checked(Call call, T callable) {
+        if (callable.arity() != call.getArgs().size())
+            throw new RuntimeException("Expected %d arguments, got %d.".formatted(callable.arity(), call.getArgs().size()));
+        return callable;
+    }
+
     @Override
     public Object accept(Literal literal) {
         return literal.getValue();
@@ -98,16 +374,15 @@ public class Interpreter implements Visitor<Object> {
     @Override
     public Object accept(Unary unary) {
         return switch (unary.getOperator().getType()) {
-            case MINUS -> -(double) evaluate(unary.getRight());
-            case BANG -> !(boolean) evaluate(unary.getRight());
+            case MINUS -> -evaluateDouble(unary.getRight());
+            case BANG -> !evaluateBoolean(unary.getRight());
             default -> null;
         };
     }
 
     @Override
     public Object accept(Ternary ternary) {
-        boolean evaluate = (boolean) evaluate(ternary.getCondition());
-        if (evaluate) return evaluate(ternary.getOnTrue());
+        if (evaluateBoolean(ternary.getCondition())) return evaluate(ternary.getOnTrue());
         else return evaluate(ternary.getOnFalse());
     }
 
@@ -118,32 +393,52 @@ public class Interpreter implements Visitor<Object> {
 
     @Override
     public Object accept(ExprStmt exprStmt) {
-        evaluate(exprStmt.getExpression());
+        effect(exprStmt.getExpression());
         return null;
     }
 
+    // evaluates an expression whose value is dropped, so an assigned number is never boxed
+    private void effect(Expr expr) {
+        if (expr instanceof Assign assign) assign(assign);
+        else if (expr instanceof Set set) assign(set);
+        else evaluate(expr);
+    }
+
     @Override
     public Object accept(Var var) {
-        if (var.getInitializer() != null) env.define(var.getName(), evaluate(var.getInitializer()));
-        else env.define(var.getName(), null);
+        Object value = var.getInitializer() == null ? null : tagged(var.getInitializer());
+        Slot slot = var.getSlot();
+        if (slot == null) {
+            if (value == NUMBER) env.defineNumber(var.getName().getLexeme(), number);
+            else env.define(var.getName(), value);
+        } else if (slot.isBoxed()) {
+            Cell cell = new Cell(null);
+            store(cell, value);
+            env.define(slot.getIndex(), cell);
+        } else if (value == NUMBER) env.defineNumber(slot.getIndex(), number);
+        else env.define(slot.getIndex(), value);
         return null;
     }
 
     @Override
     public Object accept(Variable variable) {
-        return lookUp(variable.getName(), variable);
+        return lookUp(variable.getName(), variable.getSlot());
     }
 
     @Override
     public Object accept(Block block) {
-        executeBlock(block.getStatements(), new Environment(env));
-        return null;
+        if (!block.isScoped()) return execute(block.getStatements());
+        Environment environment = pool.block(env);
+        try {
+            return executeBlock(block.getStatements(), environment);
+        } finally {
+            pool.release(environment);
+        }
     }
 
     @Override
     public Object accept(If anIf) {
-        boolean res = (boolean) anIf.getCondition().accept(this);
-        if (res) return anIf.getOnTrue().accept(this);
+        if (evaluateBoolean(anIf.getCondition())) return anIf.getOnTrue().accept(this);
         if (anIf.getOnFalse() != null) return anIf.getOnFalse().accept(this);
         return null;
     }
@@ -159,129 +454,233 @@ public class Interpreter implements Visitor<Object> {
 
     @Override
     public Object accept(While aWhile) {
-        while ((boolean) aWhile.getCondition().accept(this)) try {
-            aWhile.getBody().accept(this);
-        } catch (Break ignore) {
-            break;
-        } catch (Continue ignore) {}
+        while (evaluateBoolean(aWhile.getCondition())) {
+            Object completion = aWhile.getBody().accept(this);
+            if (completion == Completion.BREAK) break;
+            if (completion == Completion.RETURN) return completion;
+            poll();
+        }
         return null;
     }
 
     @Override
     public Object accept(For aFor) {
         aFor.getInitializer().accept(this);
-        while ((boolean) aFor.getCondition().accept(this)) {
-            try {
-                aFor.getBody().accept(this);
-            } catch (Break ignore) {
-                break;
-            } catch (Continue ignore) {}
-            aFor.getIncrement().accept(this);
+        while (evaluateBoolean(aFor.getCondition())) {
+            Object completion = aFor.getBody().accept(this);
+            if (completion == Completion.BREAK) break;
+            if (completion == Completion.RETURN) return completion;
+            effect(aFor.getIncrement());
+            poll();
         }
         return null;
     }
 
     @Override
     public Object accept(Fn fn) {
-        Function function = new Function(fn, env);
-        env.define(function);
+        Cell cell = box(fn.getSlot());
+        Function function = new Function(fn, captures(fn, env), env.isGlobal() ? env : null);
+        if (cell != null) cell.setValue(function);
+        else if (fn.getSlot() == null) env.define(function);
+        else env.define(fn.getSlot().getIndex(), function);
         return null;
     }
 
+    // A function or class that captures itself is boxed, its cell is defined before it is created so the
+    // closures can take it.
+    private Cell box(Slot slot) {
+        if (slot == null || !slot.isBoxed()) return null;
+        Cell cell = new Cell(null);
+        env.define(slot.getIndex(), cell);
+        return cell;
+    }
+
+    // the values the function uses from enclosing scopes, or the cells of those that are reassigned
+    private static Object[] captures(Fn fn, Environment from) {
+        List<Slot> sources = fn.getCaptures();
+        Object[] captures = new Object[sources == null ? 0 : sources.size()];
+        for (int i = 0; i < captures.length; i++) captures[i] = raw(from, sources.get(i));
+        return captures;
+    }
+
+    private static Object raw(Environment env, Slot slot) {
+        return slot.isCaptured() ? env.captured(slot.getIndex()) : env.get(slot.getDepth(), slot.getIndex());
+    }
+
     @Override
     public Object accept(Return aReturn) {
-        if (aReturn.getValue() == null) return null;
-        throw new ReturnVal(aReturn.getValue().accept(this));
+        tailPosition = aReturn.isTail();
+        returnValue = aReturn.getValue() == null ? null : aReturn.getValue().accept(this);
+        return Completion.RETURN;
     }
 
     @Override
     public Object accept(ClassStmt aClass) {
+        Cell cell = box(aClass.getSlot());
         Object superclass = null;
         if (aClass.getSuperclass() != null) {
             superclass = aClass.getSuperclass().accept(this);
             if (!(superclass instanceof Class cl))
                 throw new RuntimeException("'%s' is not a class.".formatted(aClass.getSuperclass().getName().getLexeme()));
         }
-        env.define(aClass.getName(), null);
-        Environment prev = env;
+        Environment closure = env;
         if (superclass != null) {
-            env = new Environment(env);
-            env.define("super", superclass);
+            closure = new Environment(env, 1);
+            closure.define(0, superclass);
         }
-        Map<String, Function> methods = aClass.getMethods().stream()
-                .collect(Collectors.toMap(Fn::getLexeme, a -> Callable.function(a, env)));
-        env = prev;
-        env.assign(aClass.getName(), new Class(aClass.getName(), (Class) superclass, methods), 0);
+        Map<String, Function> methods = new HashMap<>();
+        for (Fn method : aClass.getMethods())
+            methods.put(method.getLexeme(), Callable.function(method, captures(method, closure)));
+        Class cl = new Class(aClass.getName(), (Class) superclass, methods);
+        if (cell != null) cell.setValue(cl);
+        else if (aClass.getSlot() == null) env.define(aClass.getName(), cl);
+        else env.define(aClass.getSlot().getIndex(), cl);
         return null;
     }
 
     @Override
     public Object accept(Get get) {
+        Instance instance = instance(get);
+        int entry = lookUpProperty(get, instance);
+        int slot = get.getCache().slot(entry);
+        return slot >= 0 ? instance.getField(slot) : ((Function) get.getCache().target(entry)).bind(instance);
+    }
+
+    private Instance instance(Get get) {
         Object accept = get.getObject().accept(this);
-        if (accept instanceof Instance instance) return instance.get(get.getName());
-        throw new RuntimeException("Not an instance: '%s'.".formatted(get.getName().getLexeme()));
+        if (!(accept instanceof Instance instance))
+            throw new RuntimeException("Not an instance: '%s'.".formatted(get.getName().getLexeme()));
+        return instance;
+    }
+
+    private int lookUpProperty(Get get, Instance instance) {
+        PropertyCache cache = get.getCache();
+        if (cache == null) get.setCache(cache = new PropertyCache());
+        Shape shape = instance.getShape();
+        int entry = cache.find(shape);
+        if (entry >= 0) return entry;
+        String name = get.getName().getLexeme();
+        int slot = shape.indexOf(name);
+        Function method = slot < 0 ? instance.getAClass().findMethod(name) : null;
+        if (slot < 0 && method == null) throw new RuntimeException("Undefined property '%s'.".formatted(name));
+        return cache.add(shape, slot, method);
     }
 
     @Override
     public Object accept(Set set) {
+        Object value = assign(set);
+        return value == NUMBER ? (Object) number : value;
+    }
+
+    // like a variable, a property assignment evaluates to the assigned value
+    private Object assign(Set set) {
         Object obj = set.getObject().accept(this);
-        if (obj instanceof Instance instance) {
-            Object val = set.getValue().accept(this);
-            instance.set(set.getName(), val);
-            return null;
-        }
-        throw new RuntimeException("Expecting instance.");
+        if (!(obj instanceof Instance instance)) throw new RuntimeException("Expecting instance.");
+        Object val = tagged(set.getValue());
+        PropertyCache cache = set.getCache();
+        if (cache == null) set.setCache(cache = new PropertyCache());
+        Shape shape = instance.getShape();
+        int entry = cache.find(shape);
+        int slot;
+        if (entry < 0) {
+            String name = set.getName().getLexeme();
+            slot = shape.indexOf(name);
+            Shape next = slot < 0 ? shape.with(name) : null;
+            cache.add(shape, slot < 0 ? shape.size() : slot, next);
+            if (next != null) slot = instance.addField(next, null);
+        } else if (cache.target(entry) instanceof Shape next) slot = instance.addField(next, null);
+        else slot = cache.slot(entry);
+        if (val == NUMBER) instance.setNumber(slot, number);
+        else instance.setField(slot, val);
+        return val;
     }
 
     @Override
     public Object accept(Self self) {
-        return lookUp(self.getKeyword(), self);
+        return lookUp(self.getKeyword(), self.getSlot());
     }
 
     @Override
     public Object accept(Super aSuper) {
-        Integer d = LOCALS.get(aSuper);
-        Class sup = (Class) env.get("super", d);
-        Instance th = (Instance) env.get("this", d - 1);
+        return superMethod(aSuper).bind(superReceiver(aSuper));
+    }
+
+    private Function superMethod(Super aSuper) {
+        Class sup = (Class) lookUp(aSuper.getKeyword(), aSuper.getSlot());
         Function method = sup.findMethod(aSuper.getMethod());
         if (method == null)
             throw new RuntimeException("Undefined property '%s'.".formatted(aSuper.getMethod().getLexeme()));
-        return method.bind(th);
+        return method;
+    }
+
+    private Instance superReceiver(Super aSuper) {
+        return (Instance) lookUp(aSuper.getKeyword(), aSuper.getReceiver());
     }
 
     @Override
     public Object accept(BreakStmt breakStmt) {
-        throw new Break();
+        return Completion.BREAK;
     }
 
     @Override
     public Object accept(ContinueStmt continueStmt) {
-        throw new Continue();
+        return Completion.CONTINUE;
     }
 
-    private Object lookUp(Token name, Expr expr) {
-        Integer d = LOCALS.get(expr);
-        if (d != null) return env.get(name, d);
-        else throw new RuntimeException("Cant resolve variable %s from %d|%d.".formatted(name.getLexeme(),
-                                                                                         name.getLine(),
-                                                                                         name.getPos()));
+    private Object lookUp(Token name, Slot slot) {
+        if (slot == null) throw new RuntimeException("Cant resolve variable %s from %d|%d.".formatted(name.getLexeme(),
+                                                                                                   name.getLine(),
+                                                                                                   name.getPos()));
+        if (slot.isGlobal()) return global(name, slot).getValue();
+        Object value = slot.isCaptured() ? env.captured(slot.getIndex()) : env.get(slot.getDepth(), slot.getIndex());
+        return slot.isBoxed() ? ((Cell) value).getValue() : value;
     }
 
-    public void executeBlock(List<Stmt> statements, Environment environment) {
+    private Cell global(Token name, Slot slot) {
+        Cell cell = slot.getCell();
+        if (cell != null) return cell;
+        cell = GLOBAL_ENV.cell(name.getLexeme());
+        if (cell == null) throw new RuntimeException("Undefined variable '%s' at %d|%d".formatted(name.getLexeme(),
+                                                                                                 name.getLine(),
+                                                                                                 name.getPos()));
+        slot.setCell(cell);
+        return cell;
+    }
+
+    public Object executeBlock(List<Stmt> statements, Environment environment) {
         Environment prev = env;
         try {
             env = environment;
-            statements.forEach(e -> e.accept(this));
+            return execute(statements);
         } finally {
             env = prev;
         }
     }
 
-    private Object evaluate(Expr expr) {
-        return expr.accept(this);
+    private Object execute(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            Object completion = statement.accept(this);
+            if (completion != null) return completion;
+        }
+        return null;
+    }
+
+    // a call frame comes from the pool and has to be released once the call is done
+    Environment frame(Object[] captures, int capacity) {
+        return pool.frame(captures, capacity);
+    }
+
+    void release(Environment frame) {
+        pool.release(frame);
+    }
+
+    public Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
     }
 
-    public void resolve(Expr expr, int i) {
-        LOCALS.put(expr, i);
+    private Object evaluate(Expr expr) {
+        return expr.accept(this);
     }
 }
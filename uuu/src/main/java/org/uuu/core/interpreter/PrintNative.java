@@ -1,12 +1,15 @@
 package org.uuu.core.interpreter;
 
-import java.util.List;
-
 public class PrintNative implements Callable {
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> args) {
-        System.out.println(args.get(0));
+    public Object call(Interpreter interpreter, Object[] args) {
+        return call1(interpreter, args[0]);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        System.out.println(a);
         return null;
     }
 
@@ -0,0 +1,8 @@
+package org.uuu.core.interpreter;
+
+// Runs whenever an interpreter has used up its slice of fuel, at a loop back-edge or a function entry. It may block
+// to let other scripts run, or throw to stop this one.
+@FunctionalInterface
+public interface Safepoint {
+    void reached(Interpreter interpreter);
+}
@@ -0,0 +1,6 @@
+package org.uuu.core.interpreter;
+
+// A call in tail position, returned by the function making it instead of its result. The function that was called
+// from outside makes it once its own frame is gone, see Function.complete.
+record TailCall(Function method, Instance self, Object[] args) {
+}
@@ -0,0 +1,144 @@
+package org.uuu.core.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Writes the few parts of a class file the compiler needs. Class files are emitted in version 50,
+// which lets the verifier infer frames by itself instead of requiring a StackMapTable.
+class ClassWriter {
+    private static final int VERSION = 50;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolSize = 1;
+
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount = 0;
+
+    private final String name;
+    private final String[] interfaces;
+
+    ClassWriter(String name, String... interfaces) {
+        this.name = name;
+        this.interfaces = interfaces;
+    }
+
+    int utf8(String value) {
+        Integer index = entries.get("U" + value);
+        if (index != null) return index;
+        return entry("U" + value, 1, () -> pool.writeUTF(value));
+    }
+
+    int classRef(String internalName) {
+        Integer index = entries.get("C" + internalName);
+        if (index != null) return index;
+        int utf = utf8(internalName);
+        return entry("C" + internalName, 7, () -> pool.writeShort(utf));
+    }
+
+    int methodRef(String owner, String method, String descriptor) {
+        String key = "M" + owner + "." + method + descriptor;
+        Integer index = entries.get(key);
+        if (index != null) return index;
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(method);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + method + descriptor, 12, () -> {
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+        });
+        return entry(key, 10, () -> {
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nameAndType);
+        });
+    }
+
+    int doubleConstant(double value) {
+        String key = "D" + Double.doubleToRawLongBits(value);
+        Integer index = entries.get(key);
+        if (index != null) return index;
+        index = entry(key, 6, () -> pool.writeDouble(value));
+        poolSize++; // doubles take two pool entries
+        return index;
+    }
+
+    void method(int access, String method, String descriptor, CodeBuilder code) {
+        int nameIndex = utf8(method);
+        int descriptorIndex = utf8(descriptor);
+        int codeIndex = utf8("Code");
+        byte[] bytes = code.toBytes();
+        write(() -> {
+            methods.writeShort(access);
+            methods.writeShort(nameIndex);
+            methods.writeShort(descriptorIndex);
+            methods.writeShort(1);
+            methods.writeShort(codeIndex);
+            methods.writeInt(12 + bytes.length);
+            methods.writeShort(code.getMaxStack());
+            methods.writeShort(code.getMaxLocals());
+            methods.writeInt(bytes.length);
+            methods.write(bytes);
+            methods.writeShort(0); // exception table
+            methods.writeShort(0); // attributes
+        });
+        methodCount++;
+    }
+
+    byte[] toBytes() {
+        int thisIndex = classRef(name);
+        int superIndex = classRef("java/lang/Object");
+        int[] interfaceIndexes = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) interfaceIndexes[i] = classRef(interfaces[i]);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolSize);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(interfaceIndexes.length);
+            for (int index : interfaceIndexes) out.writeShort(index);
+            out.writeShort(0); // fields
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private int entry(String key, int tag, Writer body) {
+        write(() -> {
+            pool.writeByte(tag);
+            body.write();
+        });
+        int index = poolSize++;
+        entries.put(key, index);
+        return index;
+    }
+
+    private static void write(Writer writer) {
+        try {
+            writer.write();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private interface Writer {
+        void write() throws IOException;
+    }
+}
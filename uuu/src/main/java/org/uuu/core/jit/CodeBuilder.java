@@ -0,0 +1,125 @@
+package org.uuu.core.jit;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Bytecode of one method. Every emitted instruction states how it changes the operand stack,
+// in stack words, so the maximum depth is known once the method is complete.
+class CodeBuilder {
+    static final int ICONST_0 = 0x03;
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int BIPUSH = 0x10;
+    static final int LDC2_W = 0x14;
+    static final int DLOAD = 0x18;
+    static final int ALOAD_0 = 0x2a;
+    static final int ALOAD_1 = 0x2b;
+    static final int DALOAD = 0x31;
+    static final int DSTORE = 0x39;
+    static final int POP2 = 0x58;
+    static final int DUP2 = 0x5c;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DNEG = 0x77;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int DRETURN = 0xaf;
+    static final int RETURN = 0xb1;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+
+    static class Label {
+        private int position = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    private byte[] code = new byte[64];
+    private int length = 0;
+    private int stack = 0;
+    @Getter
+    private int maxStack = 0;
+    @Getter
+    private int maxLocals;
+
+    CodeBuilder(int maxLocals) {
+        this.maxLocals = maxLocals;
+    }
+
+    void op(int opcode, int stackChange) {
+        put(opcode);
+        adjust(stackChange);
+    }
+
+    void op1(int opcode, int operand, int stackChange) {
+        put(opcode);
+        put(operand);
+        adjust(stackChange);
+    }
+
+    void op2(int opcode, int operand, int stackChange) {
+        put(opcode);
+        put(operand >> 8);
+        put(operand);
+        adjust(stackChange);
+    }
+
+    void local(int opcode, int index, int stackChange) {
+        if (index > 0xff) throw new FnCompiler.Unsupported("too many locals");
+        maxLocals = Math.max(maxLocals, index + 2);
+        op1(opcode, index, stackChange);
+    }
+
+    void jump(int opcode, Label label, int stackChange) {
+        int at = length;
+        op2(opcode, 0, stackChange);
+        if (label.position >= 0) patch(at, label.position);
+        else label.jumps.add(at);
+    }
+
+    void bind(Label label) {
+        label.position = length;
+        for (int jump : label.jumps) patch(jump, label.position);
+    }
+
+    // after an unconditional jump the stack depth is the one of the code jumping to what follows
+    void resetStack(int depth) {
+        stack = depth;
+    }
+
+    int stack() {
+        return stack;
+    }
+
+    byte[] toBytes() {
+        return Arrays.copyOf(code, length);
+    }
+
+    private void patch(int jump, int target) {
+        int offset = target - jump;
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) throw new FnCompiler.Unsupported("method too large");
+        code[jump + 1] = (byte) (offset >> 8);
+        code[jump + 2] = (byte) offset;
+    }
+
+    private void put(int b) {
+        if (length == code.length) code = Arrays.copyOf(code, length * 2);
+        code[length++] = (byte) b;
+    }
+
+    private void adjust(int stackChange) {
+        stack += stackChange;
+        maxStack = Math.max(maxStack, stack);
+    }
+}
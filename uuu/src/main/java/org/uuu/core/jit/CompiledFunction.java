@@ -0,0 +1,27 @@
+package org.uuu.core.jit;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.uuu.core.interpreter.Function;
+import org.uuu.core.runtime.Cell;
+
+@RequiredArgsConstructor
+public class CompiledFunction {
+    @Getter
+    private final Function function;
+    // recursive calls were compiled against the function the global held at compile time
+    private final Cell binding;
+    private final NumericCode code;
+
+    public boolean accepts(Object[] args) {
+        if (binding.getValue() != function) return false;
+        for (Object arg : args) if (!(arg instanceof Double)) return false;
+        return true;
+    }
+
+    public Object call(Object[] args) {
+        double[] values = new double[args.length];
+        for (int i = 0; i < values.length; i++) values[i] = (Double) args[i];
+        return code.run(values);
+    }
+}
@@ -0,0 +1,298 @@
+package org.uuu.core.jit;
+
+import org.uuu.core.ast.expression.*;
+import org.uuu.core.ast.statement.*;
+import org.uuu.core.jit.CodeBuilder.Label;
+import org.uuu.core.runtime.Slot;
+import org.uuu.core.scanner.TokenType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.uuu.core.jit.CodeBuilder.*;
+
+// Compiles a top level function whose values are all numbers into a class implementing NumericCode.
+// Parameters and variables live in JVM locals as unboxed doubles, recursive calls are static calls and recursive tail
+// calls jump back to the start with the parameters replaced.
+// Anything outside that subset throws Unsupported and the function stays interpreted.
+class FnCompiler {
+    static class Unsupported extends RuntimeException {
+        Unsupported(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private static class Loop {
+        private final Label exit;
+        private final Label next;
+
+        private Loop(Label exit, Label next) {
+            this.exit = exit;
+            this.next = next;
+        }
+    }
+
+    private static final String NAME = "org/uuu/core/jit/CompiledFn";
+    private static final String NUMERIC_CODE = "org/uuu/core/jit/NumericCode";
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+
+    private final Fn fn;
+    private final ClassWriter writer = new ClassWriter(NAME, NUMERIC_CODE);
+    private final String descriptor;
+    private final List<List<Integer>> scopes = new ArrayList<>();
+    private final Deque<Loop> loops = new ArrayDeque<>();
+    private CodeBuilder code;
+    private int nextLocal;
+    private final Label start = new Label();
+
+    private FnCompiler(Fn fn) {
+        this.fn = fn;
+        this.descriptor = "(" + "D".repeat(fn.getParams().size()) + ")D";
+    }
+
+    static byte[] compile(Fn fn) {
+        return new FnCompiler(fn).compile();
+    }
+
+    private byte[] compile() {
+        int params = fn.getParams().size();
+        if (params > Byte.MAX_VALUE) throw new Unsupported("too many parameters");
+        if (fn.getBody().isEmpty() || !terminates(fn.getBody().get(fn.getBody().size() - 1)))
+            throw new Unsupported("function may return nil");
+
+        code = new CodeBuilder(params * 2);
+        List<Integer> frame = new ArrayList<>();
+        for (int i = 0; i < params; i++) frame.add(i * 2);
+        scopes.add(frame);
+        nextLocal = params * 2;
+        code.bind(start);
+        statements(fn.getBody());
+        writer.method(ACC_PRIVATE | ACC_STATIC, "body", descriptor, code);
+
+        code = new CodeBuilder(2);
+        for (int i = 0; i < params; i++) {
+            code.op(ALOAD_1, 1);
+            if (i <= 5) code.op(ICONST_0 + i, 1);
+            else code.op1(BIPUSH, i, 1);
+            code.op(DALOAD, 0);
+        }
+        code.op2(INVOKESTATIC, writer.methodRef(NAME, "body", descriptor), 2 - params * 2);
+        code.op(DRETURN, -2);
+        writer.method(ACC_PUBLIC, "run", "([D)D", code);
+
+        code = new CodeBuilder(1);
+        code.op(ALOAD_0, 1);
+        code.op2(INVOKESPECIAL, writer.methodRef("java/lang/Object", "<init>", "()V"), -1);
+        code.op(RETURN, 0);
+        writer.method(ACC_PUBLIC, "<init>", "()V", code);
+        return writer.toBytes();
+    }
+
+    private void statements(List<Stmt> statements) {
+        for (Stmt statement : statements)
+            if (statement instanceof Var var) declare(var);
+            else statement(statement);
+    }
+
+    private void declare(Var var) {
+        if (var.getInitializer() == null) throw new Unsupported("variable without a number");
+        number(var.getInitializer());
+        int local = nextLocal;
+        nextLocal += 2;
+        code.local(DSTORE, local, -2);
+        scopes.get(scopes.size() - 1).add(local);
+    }
+
+    private void statement(Stmt statement) {
+        if (statement instanceof ExprStmt exprStmt) effect(exprStmt.getExpression());
+        else if (statement instanceof Block block) {
+            if (block.isScoped()) scopes.add(new ArrayList<>());
+            statements(block.getStatements());
+            if (block.isScoped()) scopes.remove(scopes.size() - 1);
+        } else if (statement instanceof If anIf) {
+            Label otherwise = new Label();
+            condition(anIf.getCondition(), false, otherwise);
+            statement(anIf.getOnTrue());
+            if (anIf.getOnFalse() == null) code.bind(otherwise);
+            else if (terminates(anIf.getOnTrue())) {
+                code.bind(otherwise);
+                statement(anIf.getOnFalse());
+            } else {
+                Label end = new Label();
+                code.jump(GOTO, end, 0);
+                code.bind(otherwise);
+                statement(anIf.getOnFalse());
+                code.bind(end);
+            }
+        } else if (statement instanceof While aWhile) {
+            Label start = new Label();
+            Label exit = new Label();
+            code.bind(start);
+            condition(aWhile.getCondition(), false, exit);
+            loop(aWhile.getBody(), exit, start);
+            code.jump(GOTO, start, 0);
+            code.bind(exit);
+        } else if (statement instanceof For aFor) {
+            if (aFor.getInitializer() instanceof Var var) declare(var);
+            else if (aFor.getInitializer() != null) statement(aFor.getInitializer());
+            Label start = new Label();
+            Label next = new Label();
+            Label exit = new Label();
+            code.bind(start);
+            if (aFor.getCondition() != null) condition(aFor.getCondition(), false, exit);
+            loop(aFor.getBody(), exit, next);
+            code.bind(next);
+            if (aFor.getIncrement() != null) effect(aFor.getIncrement());
+            code.jump(GOTO, start, 0);
+            code.bind(exit);
+        } else if (statement instanceof Return aReturn) {
+            if (aReturn.getValue() == null) throw new Unsupported("function may return nil");
+            if (aReturn.isTail() && aReturn.getValue() instanceof Call call && isRecursive(call)) {
+                call.getArgs().forEach(this::number);
+                for (int i = call.getArgs().size() - 1; i >= 0; i--) code.local(DSTORE, i * 2, -2);
+                code.jump(GOTO, start, 0);
+            } else {
+                number(aReturn.getValue());
+                code.op(DRETURN, -2);
+            }
+        } else if (statement instanceof BreakStmt && !loops.isEmpty()) code.jump(GOTO, loops.peek().exit, 0);
+        else if (statement instanceof ContinueStmt && !loops.isEmpty()) code.jump(GOTO, loops.peek().next, 0);
+        else throw new Unsupported(statement.getClass().getSimpleName());
+    }
+
+    private void loop(Stmt body, Label exit, Label next) {
+        loops.push(new Loop(exit, next));
+        statement(body);
+        loops.pop();
+    }
+
+    private void effect(Expr expr) {
+        if (expr instanceof Assign assign) assign(assign, false);
+        else if (expr instanceof Call call) {
+            number(call);
+            code.op(POP2, -2);
+        } else throw new Unsupported(expr.getClass().getSimpleName());
+    }
+
+    private void number(Expr expr) {
+        if (expr instanceof Literal literal && literal.getValue() instanceof Double value) constant(value);
+        else if (expr instanceof Group group) number(group.getExpression());
+        else if (expr instanceof Variable variable) code.local(DLOAD, local(variable.getSlot()), 2);
+        else if (expr instanceof Assign assign) assign(assign, true);
+        else if (expr instanceof Unary unary && unary.getOperator().getType() == TokenType.MINUS) {
+            number(unary.getRight());
+            code.op(DNEG, 0);
+        } else if (expr instanceof Binary binary) {
+            int opcode = switch (binary.getOperator().getType()) {
+                case PLUS -> DADD;
+                case MINUS -> DSUB;
+                case STAR -> DMUL;
+                case SLASH -> DDIV;
+                default -> throw new Unsupported("comparison used as a number");
+            };
+            number(binary.getLeft());
+            number(binary.getRight());
+            code.op(opcode, -2);
+        } else if (expr instanceof Ternary ternary) {
+            Label otherwise = new Label();
+            Label end = new Label();
+            int stack = code.stack();
+            condition(ternary.getCondition(), false, otherwise);
+            number(ternary.getOnTrue());
+            code.jump(GOTO, end, 0);
+            code.resetStack(stack);
+            code.bind(otherwise);
+            number(ternary.getOnFalse());
+            code.bind(end);
+        } else if (expr instanceof Call call && isRecursive(call)) {
+            call.getArgs().forEach(this::number);
+            code.op2(INVOKESTATIC, writer.methodRef(NAME, "body", descriptor), 2 - call.getArgs().size() * 2);
+        } else throw new Unsupported(expr.getClass().getSimpleName());
+    }
+
+    // jumps to target when the condition evaluates to jumpWhen, falls through otherwise
+    private void condition(Expr expr, boolean jumpWhen, Label target) {
+        if (expr instanceof Literal literal && literal.getValue() instanceof Boolean value) {
+            if (value == jumpWhen) code.jump(GOTO, target, 0);
+        } else if (expr instanceof Group group) condition(group.getExpression(), jumpWhen, target);
+        else if (expr instanceof Unary unary && unary.getOperator().getType() == TokenType.BANG)
+            condition(unary.getRight(), !jumpWhen, target);
+        else if (expr instanceof Logic logic) {
+            boolean or = logic.getOperator().getType() == TokenType.OR;
+            if (or == jumpWhen) {
+                condition(logic.getLeft(), jumpWhen, target);
+                condition(logic.getRight(), jumpWhen, target);
+            } else {
+                Label skip = new Label();
+                condition(logic.getLeft(), !jumpWhen, skip);
+                condition(logic.getRight(), jumpWhen, target);
+                code.bind(skip);
+            }
+        } else if (expr instanceof Binary binary) compare(binary, jumpWhen, target);
+        else throw new Unsupported(expr.getClass().getSimpleName());
+    }
+
+    private void compare(Binary binary, boolean jumpWhen, Label target) {
+        TokenType type = binary.getOperator().getType();
+        number(binary.getLeft());
+        number(binary.getRight());
+        // NaN compares as false: dcmpg pushes 1 for the less-than family and dcmpl -1 for greater-than
+        switch (type) {
+            case LESS, LESS_EQUAL -> code.op(DCMPG, -3);
+            case GREATER, GREATER_EQUAL -> code.op(DCMPL, -3);
+            case EQUAL_EQUAL, BANG_EQUAL ->
+                    code.op2(INVOKESTATIC, writer.methodRef("java/lang/Double", "compare", "(DD)I"), -3);
+            default -> throw new Unsupported("number used as a condition");
+        }
+        int opcode = switch (type) {
+            case LESS -> jumpWhen ? IFLT : IFGE;
+            case LESS_EQUAL -> jumpWhen ? IFLE : IFGT;
+            case GREATER -> jumpWhen ? IFGT : IFLE;
+            case GREATER_EQUAL -> jumpWhen ? IFGE : IFLT;
+            case EQUAL_EQUAL -> jumpWhen ? IFEQ : IFNE;
+            default -> jumpWhen ? IFNE : IFEQ;
+        };
+        code.jump(opcode, target, -1);
+    }
+
+    private void assign(Assign assign, boolean keepValue) {
+        int local = local(assign.getSlot());
+        number(assign.getValue());
+        if (keepValue) code.op(DUP2, 2);
+        code.local(DSTORE, local, -2);
+    }
+
+    private void constant(double value) {
+        if (Double.doubleToRawLongBits(value) == 0) code.op(DCONST_0, 2);
+        else if (value == 1d) code.op(DCONST_1, 2);
+        else code.op2(LDC2_W, writer.doubleConstant(value), 2);
+    }
+
+    private int local(Slot slot) {
+        if (slot == null || slot.isGlobal() || slot.isCaptured() || slot.isBoxed() || slot.getDepth() >= scopes.size())
+            throw new Unsupported("variable outside of the function");
+        List<Integer> scope = scopes.get(scopes.size() - 1 - slot.getDepth());
+        if (slot.getIndex() >= scope.size()) throw new Unsupported("variable outside of the function");
+        return scope.get(slot.getIndex());
+    }
+
+    private boolean isRecursive(Call call) {
+        return call.getCallee() instanceof Variable callee &&
+               callee.getSlot() != null && callee.getSlot().isGlobal() &&
+               callee.getName().getLexeme().equals(fn.getName().getLexeme()) &&
+               call.getArgs().size() == fn.getParams().size();
+    }
+
+    private static boolean terminates(Stmt statement) {
+        if (statement instanceof Return) return true;
+        if (statement instanceof Block block)
+            return !block.getStatements().isEmpty() && terminates(block.getStatements().get(block.getStatements().size() - 1));
+        if (statement instanceof If anIf)
+            return anIf.getOnFalse() != null && terminates(anIf.getOnTrue()) && terminates(anIf.getOnFalse());
+        return false;
+    }
+}
@@ -0,0 +1,32 @@
+package org.uuu.core.jit;
+
+import org.uuu.core.interpreter.Function;
+import org.uuu.core.runtime.Cell;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+public class Jit {
+    // interpreted calls of a function before it is compiled
+    public static final int THRESHOLD = 500;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    // Returns null when the function uses anything the compiler does not support.
+    public static CompiledFunction compile(Function function) {
+        if (function.getGlobals() == null) return null;
+        Cell binding = function.getGlobals().cell(function.getDeclaration().getName().getLexeme());
+        if (binding == null) return null;
+        try {
+            byte[] bytes = FnCompiler.compile(function.getDeclaration());
+            MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(bytes, true);
+            NumericCode code = (NumericCode) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+                                                   .invoke();
+            return new CompiledFunction(function, binding, code);
+        } catch (FnCompiler.Unsupported e) {
+            return null;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to compile " + function, e);
+        }
+    }
+}
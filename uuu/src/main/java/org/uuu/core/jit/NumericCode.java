@@ -0,0 +1,6 @@
+package org.uuu.core.jit;
+
+// Entry point of a function body compiled to JVM bytecode, every argument and the result is a number.
+public interface NumericCode {
+    double run(double[] args);
+}
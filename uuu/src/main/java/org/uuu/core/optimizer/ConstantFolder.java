@@ -0,0 +1,289 @@
+package org.uuu.core.optimizer;
+
+import org.uuu.core.ast.Visitor;
+import org.uuu.core.ast.expression.*;
+import org.uuu.core.ast.statement.*;
+import org.uuu.core.scanner.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Runs after the resolver and rebuilds the tree with constant subtrees folded, groups removed, branches on constant
+// conditions replaced by the branch taken and statements after return, break or continue dropped. Operands only fold
+// when the interpreter would accept them, anything that fails at runtime is left to fail there. Removed code never
+// declares a variable that code still run depends on, so the slots stay valid.
+public class ConstantFolder implements Visitor<Object> {
+
+    public static List<Stmt> optimize(List<Stmt> statements) {
+        return new ConstantFolder().statements(statements);
+    }
+
+    public static Stmt optimize(Stmt statement) {
+        return new ConstantFolder().statement(statement);
+    }
+
+    @Override
+    public Object accept(Assign assign) {
+        Assign folded = new Assign(assign.getName(), expression(assign.getValue()));
+        folded.setSlot(assign.getSlot());
+        return folded;
+    }
+
+    @Override
+    public Object accept(Binary binary) {
+        Expr left = expression(binary.getLeft());
+        Expr right = expression(binary.getRight());
+        TokenType type = binary.getOperator().getType();
+        if (left instanceof Literal l && right instanceof Literal r) {
+            Object value = fold(type, l.getValue(), r.getValue());
+            if (value != null) return new Literal(value);
+        }
+        // x * 1, 1 * x, x / 1 and x - 0 are x for a number, x + 0 is not as it turns -0 into 0
+        if (numeric(left) && isNumber(right, 1) && (type == TokenType.STAR || type == TokenType.SLASH)) return left;
+        if (numeric(right) && isNumber(left, 1) && type == TokenType.STAR) return right;
+        if (numeric(left) && isNumber(right, 0) && type == TokenType.MINUS && !negativeZero(right)) return left;
+        return new Binary(binary.getOperator(), left, right);
+    }
+
+    private static Object fold(TokenType type, Object left, Object right) {
+        if (type == TokenType.EQUAL_EQUAL) return Objects.equals(left, right);
+        if (type == TokenType.BANG_EQUAL) return !Objects.equals(left, right);
+        if (type == TokenType.PLUS && left instanceof String l && right instanceof String r) return l + r;
+        if (!(left instanceof Double l) || !(right instanceof Double r)) return null;
+        return switch (type) {
+            case PLUS -> l + r;
+            case MINUS -> l - r;
+            case STAR -> l * r;
+            case SLASH -> l / r;
+            case GREATER -> l > r;
+            case GREATER_EQUAL -> l >= r;
+            case LESS -> l < r;
+            case LESS_EQUAL -> l <= r;
+            default -> null;
+        };
+    }
+
+    @Override
+    public Object accept(Call call) {
+        return new Call(call.getParen(), expression(call.getCallee()), call.getArgs().stream().map(this::expression).toList());
+    }
+
+    @Override
+    public Object accept(Literal literal) {
+        return literal;
+    }
+
+    @Override
+    public Object accept(Unary unary) {
+        Expr right = expression(unary.getRight());
+        TokenType type = unary.getOperator().getType();
+        if (type == TokenType.MINUS && right instanceof Literal literal && literal.getValue() instanceof Double d)
+            return new Literal(-d);
+        if (type == TokenType.BANG && right instanceof Literal literal && literal.getValue() instanceof Boolean b)
+            return new Literal(!b);
+        // --x and !!x are x when x is known to be a number or a boolean
+        if (right instanceof Unary inner && inner.getOperator().getType() == type) {
+            if (type == TokenType.MINUS && numeric(inner.getRight())) return inner.getRight();
+            if (type == TokenType.BANG && bool(inner.getRight())) return inner.getRight();
+        }
+        return new Unary(unary.getOperator(), right);
+    }
+
+    @Override
+    public Object accept(Ternary ternary) {
+        Expr condition = expression(ternary.getCondition());
+        if (condition instanceof Literal literal && literal.getValue() instanceof Boolean b)
+            return expression(b ? ternary.getOnTrue() : ternary.getOnFalse());
+        return new Ternary(condition, expression(ternary.getOnTrue()), expression(ternary.getOnFalse()));
+    }
+
+    @Override
+    public Object accept(Group group) {
+        return expression(group.getExpression());
+    }
+
+    @Override
+    public Object accept(ExprStmt exprStmt) {
+        return new ExprStmt(expression(exprStmt.getExpression()));
+    }
+
+    @Override
+    public Object accept(Var var) {
+        Var folded = new Var(var.getName(), var.getInitializer() == null ? null : expression(var.getInitializer()));
+        folded.setSlot(var.getSlot());
+        return folded;
+    }
+
+    @Override
+    public Object accept(Variable variable) {
+        return variable;
+    }
+
+    @Override
+    public Object accept(Block block) {
+        Block folded = new Block(statements(block.getStatements()));
+        folded.setScoped(block.isScoped());
+        return folded;
+    }
+
+    // null when the statement is left out entirely
+    @Override
+    public Object accept(If anIf) {
+        Expr condition = expression(anIf.getCondition());
+        if (condition instanceof Literal literal && literal.getValue() instanceof Boolean b) {
+            if (b) return statement(anIf.getOnTrue());
+            return anIf.getOnFalse() == null ? null : statement(anIf.getOnFalse());
+        }
+        Stmt onFalse = anIf.getOnFalse() == null ? null : body(anIf.getOnFalse());
+        return new If(condition, body(anIf.getOnTrue()), onFalse);
+    }
+
+    // a constant left side decides the result, otherwise the right side is returned as it is
+    @Override
+    public Object accept(Logic logic) {
+        Expr left = expression(logic.getLeft());
+        if (left instanceof Literal literal && literal.getValue() instanceof Boolean b) {
+            boolean or = logic.getOperator().getType() == TokenType.OR;
+            return or == b ? new Literal(b) : expression(logic.getRight());
+        }
+        return new Logic(logic.getOperator(), left, expression(logic.getRight()));
+    }
+
+    @Override
+    public Object accept(While aWhile) {
+        Expr condition = expression(aWhile.getCondition());
+        if (condition instanceof Literal literal && Boolean.FALSE.equals(literal.getValue())) return null;
+        return new While(condition, body(aWhile.getBody()));
+    }
+
+    // a body that is not parsed yet is folded once it is, its parameters are resolved by then
+    @Override
+    public Object accept(Fn fn) {
+        if (fn.isParsed()) return resolved(fn, new Fn(fn.getName(), fn.getParams(), statements(fn.getBody())));
+        Fn folded = resolved(fn, new Fn(fn.getName(), fn.getParams(), (List<Stmt>) null));
+        folded.setParser(() -> {
+            List<Stmt> body = statements(fn.getBody());
+            folded.setParamSlots(fn.getParamSlots());
+            return body;
+        });
+        return folded;
+    }
+
+    private static Fn resolved(Fn fn, Fn folded) {
+        folded.setSlot(fn.getSlot());
+        folded.setParamSlots(fn.getParamSlots());
+        folded.setCaptures(fn.getCaptures());
+        return folded;
+    }
+
+    @Override
+    public Object accept(Return aReturn) {
+        Return folded = new Return(aReturn.getValue() == null ? null : expression(aReturn.getValue()));
+        // an inlined call is no longer a tail call
+        folded.setTail(aReturn.isTail() && folded.getValue() instanceof Call);
+        return folded;
+    }
+
+    @Override
+    public Object accept(ClassStmt aClass) {
+        List<Fn> methods = aClass.getMethods().stream().map(e -> (Fn) statement(e)).toList();
+        ClassStmt folded = new ClassStmt(aClass.getName(), aClass.getSuperclass(), methods);
+        folded.setSlot(aClass.getSlot());
+        return folded;
+    }
+
+    @Override
+    public Object accept(Get get) {
+        return new Get(get.getName(), expression(get.getObject()));
+    }
+
+    @Override
+    public Object accept(Set set) {
+        return new Set(set.getName(), expression(set.getObject()), expression(set.getValue()));
+    }
+
+    @Override
+    public Object accept(Self self) {
+        return self;
+    }
+
+    @Override
+    public Object accept(Super aSuper) {
+        return aSuper;
+    }
+
+    @Override
+    public Object accept(BreakStmt breakStmt) {
+        return breakStmt;
+    }
+
+    @Override
+    public Object accept(ContinueStmt continueStmt) {
+        return continueStmt;
+    }
+
+    @Override
+    public Object accept(For aFor) {
+        Stmt initializer = aFor.getInitializer() == null ? null : body(aFor.getInitializer());
+        Expr condition = aFor.getCondition() == null ? null : expression(aFor.getCondition());
+        Expr increment = aFor.getIncrement() == null ? null : expression(aFor.getIncrement());
+        return new For(initializer, condition, increment, body(aFor.getBody()));
+    }
+
+    // statements after one that always leaves the list are never run
+    protected List<Stmt> statements(List<Stmt> statements) {
+        List<Stmt> folded = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            Stmt stmt = statement(statement);
+            if (stmt == null) continue;
+            folded.add(stmt);
+            if (stmt instanceof Return || stmt instanceof BreakStmt || stmt instanceof ContinueStmt) break;
+        }
+        return folded;
+    }
+
+    protected Stmt statement(Stmt statement) {
+        return (Stmt) statement.accept(this);
+    }
+
+    // where a statement is required a removed one becomes an empty block
+    private Stmt body(Stmt statement) {
+        Stmt stmt = statement(statement);
+        return stmt == null ? new Block(List.of()) : stmt;
+    }
+
+    protected Expr expression(Expr expr) {
+        return (Expr) expr.accept(this);
+    }
+
+    // expressions that can only produce a number or fail, as the interpreter sees them
+    private static boolean numeric(Expr expr) {
+        if (expr instanceof Literal literal) return literal.getValue() instanceof Double;
+        if (expr instanceof Unary unary) return unary.getOperator().getType() == TokenType.MINUS;
+        if (expr instanceof Binary binary) return switch (binary.getOperator().getType()) {
+            case MINUS, STAR, SLASH -> true;
+            case PLUS -> numeric(binary.getLeft()) && numeric(binary.getRight());
+            default -> false;
+        };
+        return false;
+    }
+
+    private static boolean bool(Expr expr) {
+        if (expr instanceof Literal literal) return literal.getValue() instanceof Boolean;
+        if (expr instanceof Unary unary) return unary.getOperator().getType() == TokenType.BANG;
+        if (expr instanceof Binary binary) return switch (binary.getOperator().getType()) {
+            case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, EQUAL_EQUAL, BANG_EQUAL -> true;
+            default -> false;
+        };
+        return false;
+    }
+
+    private static boolean isNumber(Expr expr, double value) {
+        return expr instanceof Literal literal && literal.getValue() instanceof Double d && d == value;
+    }
+
+    private static boolean negativeZero(Expr expr) {
+        return expr instanceof Literal literal && literal.getValue() instanceof Double d && Double.doubleToRawLongBits(d) == Long.MIN_VALUE;
+    }
+}
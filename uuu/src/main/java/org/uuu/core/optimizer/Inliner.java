@@ -0,0 +1,154 @@
+package org.uuu.core.optimizer;
+
+import lombok.Getter;
+import org.uuu.core.ast.expression.*;
+import org.uuu.core.ast.statement.Fn;
+import org.uuu.core.ast.statement.Return;
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.runtime.Slot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+// Replaces calls to small top-level functions with their body. A function qualifies when
+// - its name is never assigned, so the call can only reach this declaration,
+// - its body is a single return of at most maxSize nodes without calls, assignments, self or super, so it is not
+//   recursive, nothing escapes and nothing it reads changes while it runs.
+// A call is inlined when it comes after the declaration in the program, where the function is always defined. Literal
+// and local variable arguments can be copied to every use of their parameter, a global one too when the parameter is
+// read on every path so an undefined variable still fails. Any other argument without calls or assignments is
+// evaluated where its parameter is used, so that has to happen exactly once on every path: it is still evaluated
+// once and still fails when it would have, only possibly in a different order than before.
+// Nothing is inlined while a function body is still unparsed, its assignments are not known yet.
+public class Inliner extends ConstantFolder {
+    public static final int DEFAULT_SIZE = 16;
+
+    private final int maxSize;
+    private final Map<String, Fn> declared = new HashMap<>();
+    @Getter
+    private final List<String> report = new ArrayList<>();
+
+    public Inliner(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public List<Stmt> inline(List<Stmt> statements) {
+        Map<String, Fn> candidates = candidates(statements);
+        if (candidates.isEmpty()) return statements;
+        List<Stmt> inlined = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            Stmt stmt = statement(statement);
+            if (stmt != null) inlined.add(stmt);
+            if (statement instanceof Fn fn && candidates.containsKey(fn.getLexeme())) declared.put(fn.getLexeme(), fn);
+        }
+        return inlined;
+    }
+
+    @Override
+    public Object accept(Call call) {
+        Call folded = (Call) super.accept(call);
+        if (!(folded.getCallee() instanceof Variable callee) || !callee.getSlot().isGlobal()) return folded;
+        Fn fn = declared.get(callee.getName().getLexeme());
+        if (fn == null || fn.getParams().size() != folded.getArgs().size()) return folded;
+        Expr body = ((Return) fn.getBody().get(0)).getValue();
+        for (int i = 0; i < folded.getArgs().size(); i++) {
+            Expr arg = folded.getArgs().get(i);
+            boolean local = arg instanceof Variable variable && !variable.getSlot().isGlobal();
+            boolean global = arg instanceof Variable variable && variable.getSlot().isGlobal();
+            if (arg instanceof Literal || local || global && usedOnEveryPath(body, i)) continue;
+            if (size(arg) > maxSize || uses(body, i) != 1 || !usedOnEveryPath(body, i)) return folded;
+        }
+        report.add("inlined '%s' at line %d".formatted(fn.getLexeme(), call.getParen().getLine() + 1));
+        return new Substitution(folded.getArgs()).expression(body);
+    }
+
+    private Map<String, Fn> candidates(List<Stmt> statements) {
+        Scan scan = new Scan();
+        scan.statements(statements);
+        Map<String, Fn> candidates = new HashMap<>();
+        if (scan.unparsed) return candidates;
+        for (Stmt statement : statements) {
+            if (!(statement instanceof Fn fn) || scan.assigned.contains(fn.getLexeme())) continue;
+            if (fn.getBody().size() != 1 || !(fn.getBody().get(0) instanceof Return ret) || ret.getValue() == null) continue;
+            if (size(ret.getValue()) <= maxSize) candidates.put(fn.getLexeme(), fn);
+        }
+        return candidates;
+    }
+
+    // node count, or more than any size for expressions that cannot be inlined
+    private static int size(Expr expr) {
+        if (expr instanceof Literal || expr instanceof Variable) return 1;
+        if (expr instanceof Binary binary) return 1 + size(binary.getLeft()) + size(binary.getRight());
+        if (expr instanceof Logic logic) return 1 + size(logic.getLeft()) + size(logic.getRight());
+        if (expr instanceof Unary unary) return 1 + size(unary.getRight());
+        if (expr instanceof Group group) return size(group.getExpression());
+        if (expr instanceof Get get) return 1 + size(get.getObject());
+        if (expr instanceof Ternary ternary)
+            return 1 + size(ternary.getCondition()) + size(ternary.getOnTrue()) + size(ternary.getOnFalse());
+        return Integer.MAX_VALUE / 2;
+    }
+
+    private static int uses(Expr expr, int index) {
+        if (expr instanceof Variable variable)
+            return !variable.getSlot().isGlobal() && variable.getSlot().getDepth() == 0 && variable.getSlot().getIndex() == index ? 1 : 0;
+        if (expr instanceof Binary binary) return uses(binary.getLeft(), index) + uses(binary.getRight(), index);
+        if (expr instanceof Logic logic) return uses(logic.getLeft(), index) + uses(logic.getRight(), index);
+        if (expr instanceof Unary unary) return uses(unary.getRight(), index);
+        if (expr instanceof Group group) return uses(group.getExpression(), index);
+        if (expr instanceof Get get) return uses(get.getObject(), index);
+        if (expr instanceof Ternary ternary)
+            return uses(ternary.getCondition(), index) + uses(ternary.getOnTrue(), index) + uses(ternary.getOnFalse(), index);
+        return 0;
+    }
+
+    // whether parameter index is read however the logic and ternary operators in the body go
+    private static boolean usedOnEveryPath(Expr expr, int index) {
+        if (expr instanceof Variable variable)
+            return !variable.getSlot().isGlobal() && variable.getSlot().getDepth() == 0 && variable.getSlot().getIndex() == index;
+        if (expr instanceof Binary binary) return usedOnEveryPath(binary.getLeft(), index) || usedOnEveryPath(binary.getRight(), index);
+        if (expr instanceof Logic logic) return usedOnEveryPath(logic.getLeft(), index);
+        if (expr instanceof Unary unary) return usedOnEveryPath(unary.getRight(), index);
+        if (expr instanceof Group group) return usedOnEveryPath(group.getExpression(), index);
+        if (expr instanceof Get get) return usedOnEveryPath(get.getObject(), index);
+        if (expr instanceof Ternary ternary)
+            return usedOnEveryPath(ternary.getCondition(), index) ||
+                   usedOnEveryPath(ternary.getOnTrue(), index) && usedOnEveryPath(ternary.getOnFalse(), index);
+        return false;
+    }
+
+    // copies a body with its parameters replaced by the arguments and folds the result
+    private static class Substitution extends ConstantFolder {
+        private final List<Expr> args;
+
+        private Substitution(List<Expr> args) {
+            this.args = args;
+        }
+
+        @Override
+        public Object accept(Variable variable) {
+            Slot slot = variable.getSlot();
+            return slot.isGlobal() ? variable : args.get(slot.getIndex());
+        }
+    }
+
+    // globals assigned anywhere in the program, and whether any function body was left unparsed
+    private static class Scan extends ConstantFolder {
+        private final java.util.Set<String> assigned = new HashSet<>();
+        private boolean unparsed = false;
+
+        @Override
+        public Object accept(Assign assign) {
+            if (assign.getSlot().isGlobal()) assigned.add(assign.getName().getLexeme());
+            return super.accept(assign);
+        }
+
+        @Override
+        public Object accept(Fn fn) {
+            if (!fn.isParsed()) unparsed = true;
+            return super.accept(fn);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.uuu.core.optimizer;
+
+import org.uuu.core.ast.statement.Stmt;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+// The passes run over a resolved program: constant folding, then inlining of small functions up to inlineSize nodes,
+// 0 turns inlining off. What was inlined goes to report when one is given.
+public class Optimizer {
+    public static final Optimizer DEFAULT = new Optimizer(Inliner.DEFAULT_SIZE, null);
+
+    private final int inlineSize;
+    private final Consumer<String> report;
+
+    public Optimizer(int inlineSize, Consumer<String> report) {
+        this.inlineSize = inlineSize;
+        this.report = report;
+    }
+
+    public List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> folded = ConstantFolder.optimize(statements);
+        if (inlineSize <= 0) return folded;
+        Inliner inliner = new Inliner(inlineSize);
+        List<Stmt> inlined = inliner.inline(folded);
+        if (report != null) inliner.getReport().forEach(report);
+        return inlined;
+    }
+}
@@ -1,9 +1,9 @@
 package org.uuu.core.parser;
 
-import lombok.RequiredArgsConstructor;
 import org.uuu.core.ast.expression.*;
 import org.uuu.core.ast.statement.*;
 import org.uuu.core.scanner.Token;
+import org.uuu.core.scanner.TokenStream;
 import org.uuu.core.scanner.TokenType;
 
 import java.util.ArrayList;
@@ -12,22 +12,48 @@ import java.util.function.Supplier;
 
 import static org.uuu.core.scanner.TokenType.*;
 
-@RequiredArgsConstructor
 public class Parser {
 
-    private final List<Token> tokens;
+    private final TokenStream tokens;
+    // function bodies are only skimmed and parsed when first called
+    private final boolean lazy;
     private int i = 0;
 
+    public Parser(List<Token> tokens) {
+        this(TokenStream.of(tokens));
+    }
+
+    public Parser(TokenStream tokens) {
+        this(tokens, false);
+    }
+
+    public Parser(TokenStream tokens, boolean lazy) {
+        this.tokens = tokens;
+        this.lazy = lazy;
+    }
+
     public List<Stmt> run() {
         List<Stmt> res = new ArrayList<>();
-        while (!end()) res.add(declaration());
+        for (Stmt statement = next(); statement != null; statement = next()) res.add(statement);
         return res;
     }
 
+    // parses one top-level declaration, null at the end of input; tokens behind it are released
+    public Stmt next() {
+        if (end()) return null;
+        Stmt statement = declaration();
+        tokens.release(i);
+        return statement;
+    }
+
     public static List<Stmt> parse(List<Token> tokens) {
         return new Parser(tokens).run();
     }
 
+    public static List<Stmt> parse(TokenStream tokens) {
+        return new Parser(tokens).run();
+    }
+
     private Stmt declaration() {
         if (match(VAR)) return varDeclaration();
         if (match(FN)) return fnDeclaration();
@@ -36,40 +62,58 @@ public class Parser {
     }
 
     private Stmt classDeclaration() {
-        pop(CLASS, "");
+        skip(CLASS, "");
         Token name = pop(IDENTIFIER, "Expected class name.");
         Token superclass = null;
         if (match(LESS)) {
-            pop();
+            skip();
             superclass = pop(IDENTIFIER, "Expected super class identifier after '<'.");
         }
-        pop(LEFT_BRACE, "Expected '{' at the beginning of class body.");
+        skip(LEFT_BRACE, "Expected '{' at the beginning of class body.");
 
         List<Fn> methods = new ArrayList<>();
-        while (!end() && !peek().getType().equals(RIGHT_BRACE)) methods.add(fnDeclaration());
+        while (!end() && peekType() != RIGHT_BRACE) methods.add(fnDeclaration());
 
-        pop(RIGHT_BRACE, "Expected '}' at the end of class body.");
+        skip(RIGHT_BRACE, "Expected '}' at the end of class body.");
         return new ClassStmt(name, superclass == null ? null : new Variable(superclass), methods);
     }
 
     private Fn fnDeclaration() {
-        pop(); // pop 'fn'
+        skip(); // pop 'fn'
         Token name = pop(IDENTIFIER, "Expected identifier after 'fn'.");
-        pop(LEFT_PAREN, "Expected '(' after '" + name.getLexeme() + "' name.");
+        skip(LEFT_PAREN, "Expected '(' after '" + name.getLexeme() + "' name.");
         List<Token> parameters = new ArrayList<>();
         if (!match(RIGHT_PARENT)) parameters = parameters(new ArrayList<>());
-        pop(RIGHT_PARENT, "Expected ')' after function parameters.");
-        pop(LEFT_BRACE, "Expected '{' before function body.");
+        skip(RIGHT_PARENT, "Expected ')' after function parameters.");
+        skip(LEFT_BRACE, "Expected '{' before function body.");
+        if (lazy) {
+            TokenStream body = skim();
+            skip(RIGHT_BRACE, "Expected '}' after function body.");
+            return new Fn(name, parameters, () -> new Parser(body, true).run());
+        }
         List<Stmt> body = stmts();
-        pop(RIGHT_BRACE, "Expected '}' after function body.");
+        skip(RIGHT_BRACE, "Expected '}' after function body.");
         return new Fn(name, parameters, body);
     }
 
+    // Only braces are matched, the tokens up to the closing one are copied out for the parse on first call.
+    // A pulled stream releases them once this declaration is done.
+    private TokenStream skim() {
+        int start = i;
+        for (int depth = 0; depth > 0 || peekType() != RIGHT_BRACE; i++) {
+            TokenType type = peekType();
+            if (type == EOF) throw error("Expected '}' after function body.");
+            if (type == LEFT_BRACE) depth++;
+            else if (type == RIGHT_BRACE) depth--;
+        }
+        return tokens.slice(start, i);
+    }
+
     private List<Token> parameters(List<Token> params) {
         if (params.size() > 254) throw new RuntimeException("Exceeded limit of parameters (254).");
         params.add(pop());
         if (match(COMMA)) {
-            pop();
+            skip();
             return parameters(params);
         }
         return params;
@@ -77,14 +121,14 @@ public class Parser {
 
 
     private Stmt varDeclaration() {
-        pop(); // pop 'var'
+        skip(); // pop 'var'
         Token name = pop(IDENTIFIER, "Expected identifier after var.");
         Expr expr = null;
         if (match(EQUAL)) {
-            pop();
+            skip();
             expr = expression();
         }
-        pop(SEMICOLON, "Expected semicolon at the end of var declaration.");
+        skip(SEMICOLON, "Expected semicolon at the end of var declaration.");
         return new Var(name, expr);
     }
 
@@ -99,22 +143,22 @@ public class Parser {
         if (match(BREAK)) stmt = new BreakStmt(pop());
         else if (match(CONTINUE)) stmt = new ContinueStmt(pop());
         else stmt = new ExprStmt(exprStmt());
-        pop(SEMICOLON, "Expected semicolon at the end of the statement.");
+        skip(SEMICOLON, "Expected semicolon at the end of the statement.");
         return stmt;
     }
 
     private Stmt returnStmt() {
-        pop(RETURN, "");
+        skip(RETURN, "");
         Expr val = null;
         if (!match(SEMICOLON)) val = expression();
-        pop(SEMICOLON, "Expecting ';' at the end of return statement.");
+        skip(SEMICOLON, "Expecting ';' at the end of return statement.");
         return new Return(val);
     }
 
     private Expr exprStmt() {
         Expr expr = expression();
         if (match(TokenType.EQUAL)) {
-            pop(); //equals
+            skip(); //equals
             Expr value = expression();
             if (expr instanceof Variable variable) expr = new Assign(variable.getName(), value);
             else if (expr instanceof Get get) expr = new Set(get.getName(), get.getObject(), value);
@@ -124,14 +168,14 @@ public class Parser {
     }
 
     private Stmt ifStmt() {
-        pop(); // pop if
-        pop(LEFT_PAREN, "Expected left paren.");
+        skip(); // pop if
+        skip(LEFT_PAREN, "Expected left paren.");
         Expr condition = expression();
-        pop(RIGHT_PARENT, "Expected right paren.");
+        skip(RIGHT_PARENT, "Expected right paren.");
 
         Stmt onTrue = statement();
-        if (peek().getType().equals(TokenType.ELSE)) {
-            pop();
+        if (match(ELSE)) {
+            skip();
             Stmt onFalse = statement();
             return new If(condition, onTrue, onFalse);
         }
@@ -139,54 +183,54 @@ public class Parser {
     }
 
     private Stmt whileStmt() {
-        pop(); // pop while
-        pop(LEFT_PAREN, "Expected left paren.");
+        skip(); // pop while
+        skip(LEFT_PAREN, "Expected left paren.");
         Expr condition = expression();
-        pop(RIGHT_PARENT, "Expected right paren.");
+        skip(RIGHT_PARENT, "Expected right paren.");
         Stmt body = statement();
         return new While(condition, body);
     }
 
     private Stmt forStmt() {
-        pop(); // pop for
-        pop(LEFT_PAREN, "Expected '(' after 'for'.");
+        skip(); // pop for
+        skip(LEFT_PAREN, "Expected '(' after 'for'.");
 
         Stmt initializer;
         Expr condition = null;
         Expr increment = null;
 
-        if (peek().getType().equals(TokenType.SEMICOLON)) initializer = null;
-        else if (peek().getType().equals(TokenType.VAR)) initializer = varDeclaration();
+        if (peekType() == SEMICOLON) initializer = null;
+        else if (peekType() == VAR) initializer = varDeclaration();
         else initializer = new ExprStmt(exprStmt());
 
-        if (!peek().getType().equals(RIGHT_PARENT)) condition = expression();
-        pop(SEMICOLON, "Expected ';' after condition.");
-        if (!peek().getType().equals(RIGHT_PARENT)) increment = exprStmt();
-        pop(RIGHT_PARENT, "Expected ')' after 'for' clauses");
+        if (peekType() != RIGHT_PARENT) condition = expression();
+        skip(SEMICOLON, "Expected ';' after condition.");
+        if (peekType() != RIGHT_PARENT) increment = exprStmt();
+        skip(RIGHT_PARENT, "Expected ')' after 'for' clauses");
         Stmt body = statement();
 
         return new For(initializer, condition, increment, body);
     }
 
     private Stmt block() {
-        pop(); // pop open brace
+        skip(); // pop open brace
         List<Stmt> statements = stmts();
-        pop(RIGHT_BRACE, "Unexpected symbol at the end of the block.");
+        skip(RIGHT_BRACE, "Unexpected symbol at the end of the block.");
         return new Block(statements);
     }
 
     private List<Stmt> stmts() {
         List<Stmt> statements = new ArrayList<>();
-        while (!end() && !peek().getType().equals(TokenType.RIGHT_BRACE)) statements.add(declaration());
+        while (!end() && peekType() != RIGHT_BRACE) statements.add(declaration());
         return statements;
     }
 
     private Expr expression() {
         Expr expr = or();
         if (match(TokenType.QUESTION)) {
-            pop();
+            skip();
             Expr onTrue = expression();
-            pop(COLON, "Expected colon.");
+            skip(COLON, "Expected colon.");
             Expr onFalse = expression();
             expr = new Ternary(expr, onTrue, onFalse);
         }
@@ -195,7 +239,7 @@ public class Parser {
 
     private Expr or() {
         Expr left = and();
-        while (!end() && peek().getType().equals(TokenType.OR)) {
+        while (!end() && peekType() == OR) {
             Token operator = pop();
             Expr right = and();
             left = new Logic(operator, left, right);
@@ -205,7 +249,7 @@ public class Parser {
 
     private Expr and() {
         Expr left = equality();
-        while (!end() && peek().getType().equals(TokenType.AND)) {
+        while (!end() && peekType() == AND) {
             Token operator = pop();
             Expr right = equality();
             left = new Logic(operator, left, right);
@@ -244,13 +288,13 @@ public class Parser {
 
     private Expr call(Expr expr) {
         if (match(LEFT_PAREN)) {
-            pop();
+            skip();
             List<Expr> arguments = new ArrayList<>();
             if (!match(RIGHT_PARENT)) arguments = arguments(arguments);
             Token paren = pop(RIGHT_PARENT, "Expected ')' after arguments.");
             return call(new Call(paren, expr, arguments));
         } else if (match(DOT)) {
-            pop(DOT, "");
+            skip(DOT, "");
             Token name = pop(IDENTIFIER, "Expected identifier after '.'.");
             return call(new Get(name, expr));
         }
@@ -261,36 +305,43 @@ public class Parser {
         if (args.size() > 254) throw new RuntimeException("Exceeded limit of arguments (254).");
         args.add(expression());
         if (match(COMMA)) {
-            pop();
+            skip();
             return arguments(args);
         }
         return args;
     }
 
     private Expr primary() {
-        Token pop = pop();
-        switch (pop.getType()) {
-            case FALSE: return new Literal(false);
-            case TRUE: return new Literal(true);
-            case STRING, NUMBER: return new Literal(pop.getLiteral());
-            case NULL: return new Literal(null);
-            default: break;
+        switch (peekType()) {
+            case FALSE:
+                skip();
+                return new Literal(false);
+            case TRUE:
+                skip();
+                return new Literal(true);
+            case STRING, NUMBER:
+                return new Literal(tokens.literal(i++));
+            case NULL:
+                skip();
+                return new Literal(null);
+            case SELF:
+                return new Self(pop());
+            case SUPER:
+                return superr(pop());
+            case IDENTIFIER:
+                return new Variable(pop());
+            case LEFT_PAREN:
+                skip();
+                Expr grouped = expression();
+                skip(RIGHT_PARENT, "Expected ')'");
+                return new Group(grouped);
+            default:
+                throw error("Unexpected symbol at");
         }
-
-        if (pop.getType().equals(SELF)) return new Self(pop);
-        if (pop.getType().equals(SUPER)) return superr(pop);
-        if (pop.getType().equals(IDENTIFIER)) return new Variable(pop);
-
-        if (pop.getType().equals(LEFT_PAREN)) {
-            Expr grouped = expression();
-            pop(RIGHT_PARENT, "Expected ')'");
-            return new Group(grouped);
-        }
-        throw new RuntimeException("Unexpected symbol at " + pop.getLine() + "|" + pop.getPos());
     }
 
     private Expr superr(Token pop) {
-        pop(DOT, "Expected '.' after 'super'.");
+        skip(DOT, "Expected '.' after 'super'.");
         Token method = pop(IDENTIFIER, "Expecting superclass method name.");
         return new Super(pop, method);
     }
@@ -306,26 +357,46 @@ public class Parser {
     }
 
     private Token pop(TokenType type, String error) {
-        if (!match(type)) throw new RuntimeException(error + " %d|%d".formatted(peek().getLine(), peek().getPos()));
+        if (!match(type)) throw error(error);
         return pop();
     }
 
+    private void skip(TokenType type, String error) {
+        if (!match(type)) throw error(error);
+        i++;
+    }
+
+    // only tokens that end up in the tree are materialised
     private Token pop() {
-        return tokens.get(i++);
+        return tokens.token(i++);
+    }
+
+    private void skip() {
+        i++;
+    }
+
+    private boolean match(TokenType type) {
+        return !end() && tokens.type(i) == type;
     }
 
     private boolean match(TokenType... types) {
         if (end()) return false;
-        for (TokenType type : types) if (type.equals(peek().getType())) return true;
+        TokenType next = tokens.type(i);
+        for (TokenType type : types) if (type == next) return true;
         return false;
     }
 
-    private Token peek() {
-        return tokens.get(i);
+    private TokenType peekType() {
+        return tokens.has(i) ? tokens.type(i) : EOF;
+    }
+
+    private RuntimeException error(String error) {
+        if (!tokens.has(i)) return new RuntimeException(error + " <end of input>");
+        return new RuntimeException(error + " %d|%d".formatted(tokens.line(i), tokens.pos(i)));
     }
 
     private boolean end() {
-        return i >= tokens.size() || peek().getType().equals(TokenType.EOF);
+        return !tokens.has(i) || tokens.type(i) == EOF;
     }
 
 }
@@ -0,0 +1,33 @@
+package org.uuu.core.runtime;
+
+import static org.uuu.core.runtime.Unboxed.NUMBER;
+
+public class Cell {
+    private Object value;
+    private double number;
+
+    public Cell(Object value) {
+        this.value = value;
+    }
+
+    public Object getValue() {
+        return value == NUMBER ? (Object) number : value;
+    }
+
+    public void setValue(Object value) {
+        this.value = value;
+    }
+
+    public boolean isNumber() {
+        return value == NUMBER;
+    }
+
+    public double getNumber() {
+        return value == NUMBER ? number : (double) value;
+    }
+
+    public void setNumber(double number) {
+        this.value = NUMBER;
+        this.number = number;
+    }
+}
@@ -0,0 +1,8 @@
+package org.uuu.core.runtime;
+
+// Abrupt completion of a statement. Normal completion is null, a returned value is kept by the interpreter.
+public enum Completion {
+    BREAK,
+    CONTINUE,
+    RETURN
+}
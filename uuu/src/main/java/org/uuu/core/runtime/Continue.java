@@ -1,4 +0,0 @@
-package org.uuu.core.runtime;
-
-public class Continue extends RuntimeException {
-}
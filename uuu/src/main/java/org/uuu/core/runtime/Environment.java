@@ -1,56 +1,170 @@
 package org.uuu.core.runtime;
 
-import lombok.RequiredArgsConstructor;
 import org.uuu.core.interpreter.Function;
 import org.uuu.core.scanner.Token;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
-@RequiredArgsConstructor
+import static org.uuu.core.runtime.Unboxed.NUMBER;
+
 public class Environment {
 
-    private final Environment enclosing;
-    private final Map<String, Object> variables = new HashMap<>();
+    private static final int DEFAULT_CAPACITY = 8;
+    private static final Object[] NO_CAPTURES = new Object[0];
+
+    private Environment enclosing;
+    private final Map<String, Cell> globals;
+    // what the function running in this environment captured, shared by the blocks in its body
+    private Object[] captures;
+    private Object[] slots;
+    // the values of slots holding NUMBER
+    private double[] numbers;
+    private int size = 0;
 
     public Environment() {
         enclosing = null;
+        globals = new HashMap<>();
+        captures = NO_CAPTURES;
+        slots = new Object[0];
+        numbers = new double[0];
+    }
+
+    public Environment(Environment enclosing) {
+        this(enclosing, DEFAULT_CAPACITY);
+    }
+
+    public Environment(Environment enclosing, int capacity) {
+        this.enclosing = enclosing;
+        this.globals = null;
+        this.captures = enclosing.captures;
+        this.slots = new Object[Math.max(capacity, 1)];
+        this.numbers = new double[slots.length];
+    }
+
+    private Environment(Object[] captures, int capacity) {
+        this.enclosing = null;
+        this.globals = null;
+        this.captures = captures;
+        this.slots = new Object[Math.max(capacity, 1)];
+        this.numbers = new double[slots.length];
+    }
+
+    // the frame of a call, it does not enclose the scope its function was declared in
+    public static Environment frame(Object[] captures, int capacity) {
+        return new Environment(captures, capacity);
+    }
+
+    public boolean isGlobal() {
+        return globals != null;
     }
 
     public void define(Function fn) {
         define(fn.getDeclaration().getName(), fn);
     }
 
+    public void define(Token name, Object val) {
+        define(name.getLexeme(), val);
+    }
+
+    // a global, redefining it keeps its cell so the slots caching that cell see the new value
     public void define(String name, Object val) {
-        variables.put(name, val);
+        Cell cell = globals.get(name);
+        if (cell == null) globals.put(name, new Cell(val));
+        else cell.setValue(val);
     }
 
-    public void define(Token name, Object val) {
-        variables.put(name.getLexeme(), val);
+    public void defineNumber(String name, double number) {
+        Cell cell = globals.get(name);
+        if (cell == null) globals.put(name, cell = new Cell(null));
+        cell.setNumber(number);
+    }
+
+    // A local goes to the slot the resolver gave it. A declaration that runs again, as in a loop body, overwrites
+    // its slot.
+    public void define(int index, Object val) {
+        grow(index);
+        slots[index] = val;
+    }
+
+    public void defineNumber(int index, double number) {
+        grow(index);
+        slots[index] = NUMBER;
+        numbers[index] = number;
+    }
+
+    private void grow(int index) {
+        if (index >= size) size = index + 1;
+        if (index < slots.length) return;
+        int length = Math.max(index + 1, slots.length * 2);
+        slots = Arrays.copyOf(slots, length);
+        numbers = Arrays.copyOf(numbers, length);
+    }
+
+    public Cell cell(String name) {
+        if (enclosing != null) return enclosing.cell(name);
+        return globals == null ? null : globals.get(name);
     }
 
     public Object get(Token token) {
-        if (variables.containsKey(token.getLexeme())) return variables.get(token.getLexeme());
-        if (enclosing != null) return enclosing.get(token);
-        throw new RuntimeException("Undefined variable '" + token.getLexeme() + "'.");
+        Cell cell = cell(token.getLexeme());
+        if (cell == null) throw new RuntimeException("Undefined variable '" + token.getLexeme() + "'.");
+        return cell.getValue();
+    }
+
+    public Object get(int depth, int index) {
+        Environment env = this;
+        for (int i = 0; i < depth; i++) env = env.enclosing;
+        Object value = env.slots[index];
+        return value == NUMBER ? (Object) env.numbers[index] : value;
+    }
+
+    // NUMBER for an unboxed number, read it with getNumber
+    public Object getTagged(int depth, int index) {
+        Environment env = this;
+        for (int i = 0; i < depth; i++) env = env.enclosing;
+        return env.slots[index];
+    }
+
+    public double getNumber(int depth, int index) {
+        Environment env = this;
+        for (int i = 0; i < depth; i++) env = env.enclosing;
+        Object value = env.slots[index];
+        return value == NUMBER ? env.numbers[index] : (double) value;
+    }
+
+    public Object captured(int index) {
+        return captures[index];
+    }
+
+    Object[] captures() {
+        return captures;
+    }
+
+    // drops the values of a finished block or call so a pooled environment keeps nothing alive
+    void clear() {
+        Arrays.fill(slots, 0, size, null);
+        size = 0;
+        enclosing = null;
+        captures = NO_CAPTURES;
     }
 
-    public Object get(Token token, int d) {
-        return get(token.getLexeme(), d);
+    void reset(Environment enclosing, Object[] captures) {
+        this.enclosing = enclosing;
+        this.captures = captures;
     }
 
-    public Object get(String token, int d) {
-        if (d == 0 && !variables.containsKey(token)) return null;
-        else if (d == 0) return variables.get(token);
-        if (enclosing == null) return null;
-        return enclosing.get(token, d - 1);
+    public void assign(int depth, int index, Object value) {
+        Environment env = this;
+        for (int i = 0; i < depth; i++) env = env.enclosing;
+        env.slots[index] = value;
     }
 
-    public void assign(Token name, Object value, Integer d) {
-        if (d == 0 && !variables.containsKey(name.getLexeme()))
-            throw new RuntimeException("Undefined variable '" + name.getLexeme() + "'.");
-        else if (d == 0) variables.put(name.getLexeme(), value);
-        else if (enclosing == null) throw new RuntimeException("idk");
-        else enclosing.assign(name, value, d - 1);
+    public void assignNumber(int depth, int index, double number) {
+        Environment env = this;
+        for (int i = 0; i < depth; i++) env = env.enclosing;
+        env.slots[index] = NUMBER;
+        env.numbers[index] = number;
     }
 }
@@ -0,0 +1,29 @@
+package org.uuu.core.runtime;
+
+// Environments of finished blocks and calls, handed out again to the next ones. Closures copy what they capture,
+// so nothing refers to an environment once the block or call it was made for is done.
+public class EnvironmentPool {
+    private static final int MAX_SIZE = 256;
+
+    private final Environment[] pooled = new Environment[MAX_SIZE];
+    private int size = 0;
+
+    public Environment block(Environment enclosing) {
+        if (size == 0) return new Environment(enclosing);
+        Environment env = pooled[--size];
+        env.reset(enclosing, enclosing.captures());
+        return env;
+    }
+
+    public Environment frame(Object[] captures, int capacity) {
+        if (size == 0) return Environment.frame(captures, capacity);
+        Environment env = pooled[--size];
+        env.reset(null, captures);
+        return env;
+    }
+
+    public void release(Environment env) {
+        env.clear();
+        if (size < MAX_SIZE) pooled[size++] = env;
+    }
+}
@@ -0,0 +1,32 @@
+package org.uuu.core.runtime;
+
+// Polymorphic inline cache of a property access site, keyed by the receiver shape.
+public class PropertyCache {
+    private static final int LIMIT = 4;
+
+    private final Shape[] shapes = new Shape[LIMIT];
+    private final int[] slots = new int[LIMIT];
+    private final Object[] targets = new Object[LIMIT];
+    private int size = 0;
+
+    public int find(Shape shape) {
+        for (int i = 0; i < size; i++) if (shapes[i] == shape) return i;
+        return -1;
+    }
+
+    public int slot(int entry) {
+        return slots[entry];
+    }
+
+    public Object target(int entry) {
+        return targets[entry];
+    }
+
+    public int add(Shape shape, int slot, Object target) {
+        int entry = size < LIMIT ? size++ : LIMIT - 1; // megamorphic, recycle the last entry
+        shapes[entry] = shape;
+        slots[entry] = slot;
+        targets[entry] = target;
+        return entry;
+    }
+}
@@ -0,0 +1,37 @@
+package org.uuu.core.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Layout of instance fields. Instances of one class that got their fields in the same order share a shape.
+public class Shape {
+    private final Map<String, Integer> index;
+    private final Map<String, Shape> transitions = new HashMap<>();
+
+    private Shape(Map<String, Integer> index) {
+        this.index = index;
+    }
+
+    public static Shape root() {
+        return new Shape(Map.of());
+    }
+
+    public int indexOf(String name) {
+        Integer i = index.get(name);
+        return i == null ? -1 : i;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public Shape with(String name) {
+        Shape next = transitions.get(name);
+        if (next != null) return next;
+        Map<String, Integer> nextIndex = new HashMap<>(index);
+        nextIndex.put(name, index.size());
+        next = new Shape(nextIndex);
+        transitions.put(name, next);
+        return next;
+    }
+}
@@ -0,0 +1,39 @@
+package org.uuu.core.runtime;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@RequiredArgsConstructor
+public class Slot {
+    private static final int GLOBAL = -1;
+    private static final int CAPTURED = -2;
+
+    private final int depth;
+    private final int index;
+
+    // the variable is captured and reassigned, its frame slot and every closure share a Cell holding it
+    @Setter
+    private boolean boxed;
+
+    @Setter
+    private Cell cell; // resolved on first access of a global
+
+    public static Slot global() {
+        return new Slot(GLOBAL, -1);
+    }
+
+    // the index-th value captured by the enclosing function
+    public static Slot captured(int index) {
+        return new Slot(CAPTURED, index);
+    }
+
+    public boolean isGlobal() {
+        return depth == GLOBAL;
+    }
+
+    public boolean isCaptured() {
+        return depth == CAPTURED;
+    }
+}
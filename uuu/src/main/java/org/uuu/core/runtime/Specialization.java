@@ -0,0 +1,10 @@
+package org.uuu.core.runtime;
+
+// Type feedback recorded on a sum, it only moves down the list: a specialised sum that sees an unexpected type falls
+// back to GENERIC for good.
+public enum Specialization {
+    UNINITIALIZED,
+    DOUBLE,
+    STRING,
+    GENERIC
+}
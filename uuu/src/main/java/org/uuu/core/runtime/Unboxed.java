@@ -0,0 +1,15 @@
+package org.uuu.core.runtime;
+
+// Marks a storage slot whose number is kept unboxed next to it, in the double array of a frame or an instance or in
+// the number of a cell. It is boxed only when the value is read as an object.
+public final class Unboxed {
+    public static final Object NUMBER = new Object() {
+        @Override
+        public String toString() {
+            return "<unboxed number>";
+        }
+    };
+
+    private Unboxed() {
+    }
+}
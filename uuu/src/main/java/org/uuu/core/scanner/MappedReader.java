@@ -0,0 +1,36 @@
+package org.uuu.core.scanner;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// Decodes a mapped file as UTF-8 straight into the scanner buffer, no copy of the whole file is made.
+class MappedReader extends Reader {
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean flushed = false;
+
+    MappedReader(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int read(char[] buffer, int off, int len) {
+        if (flushed) return -1;
+        CharBuffer out = CharBuffer.wrap(buffer, off, len);
+        if (bytes.hasRemaining()) decoder.decode(bytes, out, true);
+        if (!bytes.hasRemaining() && decoder.flush(out).isUnderflow()) flushed = true;
+        int n = out.position() - off;
+        return n == 0 && flushed ? -1 : n;
+    }
+
+    @Override
+    public void close() {
+        flushed = true;
+    }
+}
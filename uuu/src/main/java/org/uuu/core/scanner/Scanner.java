@@ -1,204 +1,282 @@
 package org.uuu.core.scanner;
 
-import lombok.RequiredArgsConstructor;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 
-import java.util.*;
-
-@RequiredArgsConstructor
 public class Scanner {
 
-    private static final Map<String, TokenType> keyWords = new HashMap<>();
+    // 10^n for the exact range of doubles, used by the number fast path
+    private static final double[] POWERS_OF_TEN = new double[23];
+    private static final int BUFFER_SIZE = 8192;
 
     static {
-        keyWords.put("var", TokenType.VAR);
-        keyWords.put("fn", TokenType.FN);
-
-        keyWords.put("while", TokenType.WHILE);
-        keyWords.put("for", TokenType.FOR);
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
 
-        keyWords.put("if", TokenType.IF);
-        keyWords.put("else", TokenType.ELSE);
+    private final SymbolTable symbols;
+    // Input still to be read, null once it is exhausted or when the whole source was given up front. Only
+    // code[0, limit) holds input, code[0] is the character at offset in the source.
+    private Reader reader;
+    private char[] code;
+    private int limit;
+    private int offset = 0;
+    // start of the token being scanned, characters before it are dropped when the buffer is refilled
+    private int mark = 0;
+    private int c = 0;
+    private int line = 0;
 
-        keyWords.put("true", TokenType.TRUE);
-        keyWords.put("false", TokenType.FALSE);
+    public Scanner(String code) {
+        this(code == null ? new char[0] : code.toCharArray());
+    }
 
-        keyWords.put("class", TokenType.CLASS);
-        keyWords.put("super", TokenType.SUPER);
-        keyWords.put("self", TokenType.SELF);
+    public Scanner(char[] code) {
+        this(code, new SymbolTable());
+    }
 
-        keyWords.put("return", TokenType.RETURN);
-        keyWords.put("continue", TokenType.CONTINUE);
-        keyWords.put("break", TokenType.BREAK);
-        keyWords.put("switch", TokenType.SWITCH);
+    public Scanner(char[] code, SymbolTable symbols) {
+        this.code = code;
+        this.limit = code.length;
+        this.symbols = symbols;
+    }
 
-        keyWords.put("null", TokenType.NULL);
+    public Scanner(Reader reader) {
+        this(reader, new SymbolTable());
     }
 
+    public Scanner(Reader reader, SymbolTable symbols) {
+        this.reader = reader;
+        this.code = new char[BUFFER_SIZE];
+        this.limit = 0;
+        this.symbols = symbols;
+    }
 
-    private final String code;
-    private int c = 0;
-    private int line = 0;
+    // the file is mapped rather than read, its characters are decoded as the scanner reaches them
+    public static Scanner open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            return new Scanner(new MappedReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+        }
+    }
 
     public static List<Token> scan(String code) {
         return new Scanner(code).scan();
     }
 
+    public static TokenStream stream(String code) {
+        return new Scanner(code).stream();
+    }
+
     public List<Token> scan() {
-        if (code == null || code.isEmpty()) return List.of();
-        List<Token> r = new ArrayList<>();
-        while (!over())
-            if (current() == '/' && peek() == '/') while (!newLine()) c++;
-            else if (newLine()) {
-                c++;
-                line++;
-            } else if (isSpace()) c++;
-            else {
-                Optional<Token> token = trySimple()
-                        .or(this::tryDigit)
-                        .or(this::tryString)
-                        .or(this::tryIdentifier);
-                if (token.isEmpty()) System.out.println("Unexpected character %d | %c".formatted(line, c));
-                else r.add(token.get());
-                c++;
-            }
-        return r;
+        if (limit == 0 && reader == null) return List.of();
+        return stream().toList();
     }
 
-    private Optional<Token> tryIdentifier() {
-        if (!isAlpha()) return Optional.empty();
-        StringBuilder identifier = new StringBuilder();
-        while (!over() && (isAlpha() || isDigit())) {
-            identifier.append(current());
-            c++;
+    public TokenStream stream() {
+        TokenStream r = new TokenStream(reader == null ? limit / 8 : BUFFER_SIZE / 8, symbols);
+        while (next(r)) {
         }
-        c--;
-        String str = identifier.toString();
-        if (keyWords.containsKey(str)) return Optional.of(Token.ofType(keyWords.get(str), line, c));
-        else return Optional.of(Token.ofIdent(str, line, c));
-    }
-
-    private Optional<Token> trySimple() {
-        return Optional.ofNullable(parse());
-    }
-
-    private Token parse() {
-        return switch (current()) {
-            case '(' -> Token.ofType(TokenType.LEFT_PAREN, line, c);
-            case ')' -> Token.ofType(TokenType.RIGHT_PARENT, line, c);
-            case '{' -> Token.ofType(TokenType.LEFT_BRACE, line, c);
-            case '}' -> Token.ofType(TokenType.RIGHT_BRACE, line, c);
-            case ',' -> Token.ofType(TokenType.COMMA, line, c);
-            case '.' -> Token.ofType(TokenType.DOT, line, c);
-            case '-' -> Token.ofType(TokenType.MINUS, line, c);
-            case '+' -> Token.ofType(TokenType.PLUS, line, c);
-            case ';' -> Token.ofType(TokenType.SEMICOLON, line, c);
-            case '*' -> Token.ofType(TokenType.STAR, line, c);
-            case '/' -> Token.ofType(TokenType.SLASH, line, c);
-            case '&' -> Token.ofType(TokenType.AND, line, c);
-            case '|' -> Token.ofType(TokenType.OR, line, c);
-            case '?' -> Token.ofType(TokenType.QUESTION, line, c);
-            case ':' -> Token.ofType(TokenType.COLON, line, c);
-            case '=' -> {
-                if (peek() == '=') {
-                    c++;
-                    yield Token.ofType(TokenType.EQUAL_EQUAL, line, c);
-                } else yield Token.ofType(TokenType.EQUAL, line, c);
-            }
-            case '<' -> {
-                if (peek() == '=') {
-                    c++;
-                    yield Token.ofType(TokenType.LESS_EQUAL, line, c);
-                } else yield Token.ofType(TokenType.LESS, line, c);
-            }
-            case '>' -> {
-                if (peek() == '=') {
-                    c++;
-                    yield Token.ofType(TokenType.GREATER_EQUAL, line, c);
-                } else yield Token.ofType(TokenType.GREATER, line, c);
-            }
-            case '!' -> {
-                if (peek() == '=') {
-                    c++;
-                    yield Token.ofType(TokenType.BANG_EQUAL, line, c);
-                } else yield Token.ofType(TokenType.BANG, line, c);
-            }
-            default -> null;
-        };
+        return r;
     }
 
-    private boolean isAlpha() {
-        char cur = current();
-        return (cur >= 'a' && cur <= 'z') ||
-                (cur >= 'A' && cur <= 'Z') ||
-                cur == '_';
+    // tokens are scanned as the parser asks for them
+    public TokenStream pull() {
+        return new TokenStream(BUFFER_SIZE / 8, symbols, this);
     }
 
-    private Optional<Token> tryDigit() {
-        if (isDigit()) return Optional.of(parseDigit());
-        else return Optional.empty();
+    // scans until one more token is added, false at the end of input
+    boolean next(TokenStream r) {
+        int size = r.size();
+        for (; has(c); c++) {
+            char cur = code[c];
+            mark = c;
+            switch (cur) {
+                case '\n' -> line++;
+                case ' ', '\t', '\r' -> {
+                }
+                case '(' -> add(r, TokenType.LEFT_PAREN);
+                case ')' -> add(r, TokenType.RIGHT_PARENT);
+                case '{' -> add(r, TokenType.LEFT_BRACE);
+                case '}' -> add(r, TokenType.RIGHT_BRACE);
+                case ',' -> add(r, TokenType.COMMA);
+                case '.' -> add(r, TokenType.DOT);
+                case '-' -> add(r, TokenType.MINUS);
+                case '+' -> add(r, TokenType.PLUS);
+                case ';' -> add(r, TokenType.SEMICOLON);
+                case '*' -> add(r, TokenType.STAR);
+                case '&' -> add(r, TokenType.AND);
+                case '|' -> add(r, TokenType.OR);
+                case '?' -> add(r, TokenType.QUESTION);
+                case ':' -> add(r, TokenType.COLON);
+                case '/' -> {
+                    if (peek() == '/') skipComment();
+                    else add(r, TokenType.SLASH);
+                }
+                // two character tokens are positioned at their second character
+                case '=' -> operator(r, TokenType.EQUAL, TokenType.EQUAL_EQUAL);
+                case '<' -> operator(r, TokenType.LESS, TokenType.LESS_EQUAL);
+                case '>' -> operator(r, TokenType.GREATER, TokenType.GREATER_EQUAL);
+                case '!' -> operator(r, TokenType.BANG, TokenType.BANG_EQUAL);
+                case '"' -> string(r);
+                default -> {
+                    if (isDigit(cur)) number(r);
+                    else if (isAlpha(cur)) identifier(r);
+                    else System.out.println("Unexpected character %d | %c".formatted(line, cur));
+                }
+            }
+            if (r.size() != size) {
+                c++;
+                return true;
+            }
+        }
+        return false;
+    }
 
+    // true when code[i] holds input, reading more of it when the buffer runs out
+    private boolean has(int i) {
+        return i < limit || reader != null && fill(i);
     }
 
-    private Token parseDigit() {
-        StringBuilder digit = new StringBuilder();
-        while (!over() && (isDigit() || (current() == '.' && isDigit(peek())))) {
-            digit.append(current());
-            c++;
+    // Everything before the current token is already scanned, so it is dropped to make room. The
+    // buffer only grows for a token longer than itself.
+    private boolean fill(int i) {
+        if (mark > 0) {
+            System.arraycopy(code, mark, code, 0, limit - mark);
+            offset += mark;
+            limit -= mark;
+            c -= mark;
+            i -= mark;
+            mark = 0;
+        }
+        try {
+            while (i >= limit) {
+                if (limit == code.length) code = Arrays.copyOf(code, code.length * 2);
+                int n = reader.read(code, limit, code.length - limit);
+                if (n < 0) {
+                    reader.close();
+                    reader = null;
+                    return false;
+                }
+                limit += n;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        c--;
-        return Token.ofNumber(Double.parseDouble(digit.toString()), line, c);
+        return true;
+    }
 
+    private void add(TokenStream r, TokenType type) {
+        r.add(type, offset + mark, offset + c + 1, line);
     }
 
-    private Optional<Token> tryString() {
-        if (current() == '"') return Optional.of(parseStr());
-        else return Optional.empty();
+    // stops before the line break so the loop still counts it
+    private void skipComment() {
+        while (has(c + 1) && code[c + 1] != '\n') mark = ++c;
     }
 
-    private Token parseStr() {
-        StringBuilder string = new StringBuilder();
-        if (current() == '"') c++; //
-        char p = current();
-        while (current() != '"' || p == '\\') {
-            p = current();
-            string.append(current());
-            c++;
-        }
-        return Token.ofStr(string.toString(), line, c);
+    // multi character tokens leave c at their last character, which is also their position
+    private void identifier(TokenStream r) {
+        while (has(c + 1) && (isAlpha(code[c + 1]) || isDigit(code[c + 1]))) c++;
+        int length = c - mark + 1;
+        TokenType keyWord = keyWord(mark, length);
+        if (keyWord != null) add(r, keyWord);
+        else r.add(TokenType.IDENTIFIER, symbols.intern(code, mark, length), offset + c + 1, line);
+    }
+
+    // keywords are told apart by their first character and then compared in place
+    private TokenType keyWord(int start, int length) {
+        return switch (code[start]) {
+            case 'b' -> is(start, length, "break", TokenType.BREAK);
+            case 'c' -> length == 5 ? is(start, length, "class", TokenType.CLASS) : is(start, length, "continue", TokenType.CONTINUE);
+            case 'e' -> is(start, length, "else", TokenType.ELSE);
+            case 'f' -> switch (length) {
+                case 2 -> is(start, length, "fn", TokenType.FN);
+                case 3 -> is(start, length, "for", TokenType.FOR);
+                default -> is(start, length, "false", TokenType.FALSE);
+            };
+            case 'i' -> is(start, length, "if", TokenType.IF);
+            case 'n' -> is(start, length, "null", TokenType.NULL);
+            case 'r' -> is(start, length, "return", TokenType.RETURN);
+            case 's' -> switch (length) {
+                case 4 -> is(start, length, "self", TokenType.SELF);
+                case 5 -> is(start, length, "super", TokenType.SUPER);
+                default -> is(start, length, "switch", TokenType.SWITCH);
+            };
+            case 't' -> is(start, length, "true", TokenType.TRUE);
+            case 'v' -> is(start, length, "var", TokenType.VAR);
+            case 'w' -> is(start, length, "while", TokenType.WHILE);
+            default -> null;
+        };
     }
 
-    private boolean isDigit() {
-        return isDigit(current());
+    private TokenType is(int start, int length, String keyWord, TokenType type) {
+        if (length != keyWord.length()) return null;
+        for (int i = 1; i < length; i++) if (code[start + i] != keyWord.charAt(i)) return null;
+        return type;
     }
 
-    private boolean isDigit(char c) {
-        return c >= '0' && c <= '9';
+    private void number(TokenStream r) {
+        while (has(c + 1) && (isDigit(code[c + 1]) || (code[c + 1] == '.' && has(c + 2) && isDigit(code[c + 2]))))
+            c++;
+        r.addLiteral(TokenType.NUMBER, parseNumber(mark, c + 1), offset + c + 1, line);
     }
 
-    private boolean newLine() {
-        return current() == '\n';
+    // Digits up to 15 significant ones with at most 22 after the dot are exact as a long over a power
+    // of ten, a single division of two exact doubles is then correctly rounded. Anything else goes
+    // through Double.parseDouble.
+    private double parseNumber(int start, int end) {
+        long mantissa = 0;
+        int digits = 0;
+        int dot = -1;
+        for (int i = start; i < end; i++) {
+            char ch = code[i];
+            if (ch == '.') {
+                if (dot >= 0) return Double.parseDouble(new String(code, start, end - start));
+                dot = i;
+            } else {
+                mantissa = mantissa * 10 + (ch - '0');
+                if (mantissa != 0) digits++;
+            }
+        }
+        int fraction = dot < 0 ? 0 : end - dot - 1;
+        if (digits > 15 || fraction >= POWERS_OF_TEN.length) return Double.parseDouble(new String(code, start, end - start));
+        return fraction == 0 ? mantissa : mantissa / POWERS_OF_TEN[fraction];
     }
 
-    private boolean isSpace() {
-        char cur = current();
-        return cur == ' ' || cur == '\t' || cur == '\r';
+    // a quote right after a backslash does not end the string, the backslash is kept
+    private void string(TokenStream r) {
+        c++;
+        while (has(c) && (code[c] != '"' || (c > mark + 1 && code[c - 1] == '\\'))) c++;
+        if (!has(c)) throw new RuntimeException("Unterminated string at line %d.".formatted(line));
+        r.addLiteral(TokenType.STRING, new String(code, mark + 1, c - mark - 1), offset + c + 1, line);
     }
 
-    private boolean over() {
-        return c >= code.length();
+    private void operator(TokenStream r, TokenType single, TokenType withEqual) {
+        add(r, match('=') ? withEqual : single);
     }
 
-    private char peek() {
-        if (!hasNext()) return '\0';
-        return code.charAt(c + 1);
+    private boolean match(char expected) {
+        if (peek() != expected) return false;
+        c++;
+        return true;
     }
 
-    private char current() {
-        return code.charAt(c);
+    private static boolean isAlpha(char cur) {
+        return (cur >= 'a' && cur <= 'z') ||
+                (cur >= 'A' && cur <= 'Z') ||
+                cur == '_';
     }
 
-    private boolean hasNext() {
-        return c < code.length() - 1;
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
+    private char peek() {
+        if (!has(c + 1)) return '\0';
+        return code[c + 1];
+    }
 }
@@ -0,0 +1,67 @@
+package org.uuu.core.scanner;
+
+import java.util.Arrays;
+
+// Identifier names of one compilation. Each distinct name is one String, so every token, tree node
+// and runtime map key for that name shares it and String.equals succeeds on identity.
+public class SymbolTable {
+    private String[] symbols = new String[64];
+    private int[] hashes = new int[64];
+    // open addressing over symbol ids plus one, zero marks a free bucket
+    private int[] buckets = new int[128];
+    private int size = 0;
+
+    public int intern(char[] source, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) hash = 31 * hash + source[i];
+        int mask = buckets.length - 1;
+        for (int b = hash & mask; ; b = (b + 1) & mask) {
+            int id = buckets[b] - 1;
+            if (id < 0) {
+                id = add(new String(source, start, length), hash);
+                buckets[b] = id + 1;
+                if (size * 2 > buckets.length) rehash();
+                return id;
+            }
+            if (hashes[id] == hash && matches(symbols[id], source, start, length)) return id;
+        }
+    }
+
+    public String intern(String name) {
+        return name(intern(name.toCharArray(), 0, name.length()));
+    }
+
+    public String name(int id) {
+        return symbols[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String symbol, int hash) {
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        symbols[size] = symbol;
+        hashes[size] = hash;
+        return size++;
+    }
+
+    private void rehash() {
+        buckets = new int[buckets.length * 2];
+        int mask = buckets.length - 1;
+        for (int id = 0; id < size; id++) {
+            int b = hashes[id] & mask;
+            while (buckets[b] != 0) b = (b + 1) & mask;
+            buckets[b] = id + 1;
+        }
+    }
+
+    private static boolean matches(String symbol, char[] source, int start, int length) {
+        if (symbol.length() != length) return false;
+        for (int i = 0; i < length; i++) if (symbol.charAt(i) != source[start + i]) return false;
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+package org.uuu.core.scanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Tokens stored as parallel arrays, identifier names come from the symbol table. A Token object is only created when the
+// parser asks for one, for the names and operators kept in the tree.
+public class TokenStream {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final SymbolTable symbols;
+    private byte[] types;
+    // offset of the first character, identifiers store their symbol id and literals their index in
+    // the literal table here instead
+    private int[] starts;
+    private int[] ends;
+    private int[] lines;
+    private final List<Object> literals = new ArrayList<>();
+    // tokens this stream was built from, when it was not built by the scanner
+    private final Token[] tokens;
+    // Scanner still producing tokens on demand, null once it ran out of input. A pulled stream only keeps
+    // the tokens from base on, the arrays are indexed relative to it.
+    private Scanner source;
+    private final boolean pulled;
+    private int base = 0;
+    private int literalBase = 0;
+    private int size = 0;
+
+    TokenStream(int capacity, SymbolTable symbols) {
+        this(capacity, symbols, null);
+    }
+
+    TokenStream(int capacity, SymbolTable symbols, Scanner source) {
+        this.symbols = symbols;
+        this.tokens = null;
+        this.source = source;
+        this.pulled = source != null;
+        capacity = Math.max(16, capacity);
+        types = new byte[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        lines = new int[capacity];
+    }
+
+    private TokenStream(List<Token> tokens) {
+        this.symbols = null;
+        this.pulled = false;
+        this.tokens = tokens.toArray(new Token[0]);
+        size = this.tokens.length;
+        types = new byte[size];
+        lines = new int[size];
+        ends = new int[size];
+        for (int i = 0; i < size; i++) {
+            types[i] = (byte) this.tokens[i].getType().ordinal();
+            lines[i] = this.tokens[i].getLine();
+            ends[i] = this.tokens[i].getPos() + 1;
+        }
+    }
+
+    public static TokenStream of(List<Token> tokens) {
+        return new TokenStream(tokens);
+    }
+
+    void add(TokenType type, int start, int end, int line) {
+        if (size == types.length) grow();
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = line;
+        size++;
+    }
+
+    void addLiteral(TokenType type, Object literal, int end, int line) {
+        add(type, literalBase + literals.size(), end, line);
+        literals.add(literal);
+    }
+
+    // tokens scanned so far, a pulled stream may have more to come
+    public int size() {
+        return base + size;
+    }
+
+    // whether token i exists, a pulled stream scans up to it first
+    public boolean has(int i) {
+        while (i - base >= size && source != null) if (!source.next(this)) source = null;
+        return i - base < size;
+    }
+
+    public TokenType type(int i) {
+        return TYPES[types[i - base]];
+    }
+
+    public int line(int i) {
+        return lines[i - base];
+    }
+
+    // tokens are positioned at their last character
+    public int pos(int i) {
+        return ends[i - base] - 1;
+    }
+
+    public Object literal(int i) {
+        if (tokens != null) return tokens[i].getLiteral();
+        TokenType type = type(i);
+        return type == TokenType.NUMBER || type == TokenType.STRING ? literals.get(starts[i - base] - literalBase) : null;
+    }
+
+    public Token token(int i) {
+        if (tokens != null) return tokens[i];
+        TokenType type = type(i);
+        int j = i - base;
+        return switch (type) {
+            case IDENTIFIER -> Token.ofIdent(symbols.name(starts[j]), lines[j], pos(i));
+            case NUMBER -> Token.ofNumber((Double) literals.get(starts[j] - literalBase), lines[j], pos(i));
+            case STRING -> Token.ofStr((String) literals.get(starts[j] - literalBase), lines[j], pos(i));
+            default -> Token.ofType(type, lines[j], pos(i));
+        };
+    }
+
+    // Drops the tokens before i from a pulled stream once the parser is done with them, so a long
+    // file never has all of its tokens in memory. Streams built up front keep everything.
+    public void release(int i) {
+        if (!pulled || i <= base) return;
+        int n = Math.min(i - base, size);
+        int dropped = 0;
+        for (int j = 0; j < n; j++) if (types[j] == TokenType.NUMBER.ordinal() || types[j] == TokenType.STRING.ordinal()) dropped++;
+        literals.subList(0, dropped).clear();
+        literalBase += dropped;
+        System.arraycopy(types, n, types, 0, size - n);
+        System.arraycopy(starts, n, starts, 0, size - n);
+        System.arraycopy(ends, n, ends, 0, size - n);
+        System.arraycopy(lines, n, lines, 0, size - n);
+        size -= n;
+        base += n;
+    }
+
+    // copy of tokens [from, to), literals and symbols stay shared
+    public TokenStream slice(int from, int to) {
+        if (tokens != null) return new TokenStream(Arrays.asList(tokens).subList(from, to));
+        TokenStream slice = new TokenStream(to - from, symbols);
+        for (int i = from; i < to; i++) {
+            int j = i - base;
+            TokenType type = type(i);
+            if (type == TokenType.NUMBER || type == TokenType.STRING) slice.addLiteral(type, literal(i), ends[j], lines[j]);
+            else slice.add(type, starts[j], ends[j], lines[j]);
+        }
+        return slice;
+    }
+
+    public List<Token> toList() {
+        List<Token> list = new ArrayList<>(size);
+        for (int i = base; has(i); i++) list.add(token(i));
+        return list;
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+    }
+}
@@ -1,8 +1,7 @@
 package org.uuu.core.scanner;
 
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
 
-@RequiredArgsConstructor
 public enum TokenType {
     LEFT_PAREN,
     RIGHT_PARENT,
@@ -36,6 +35,12 @@ public enum TokenType {
 
     PRINT,
 
-    NULL, EOF,
+    NULL, EOF;
 
+    @Getter
+    private final String lexeme;
+
+    TokenType() {
+        lexeme = name().toLowerCase();
+    }
 }
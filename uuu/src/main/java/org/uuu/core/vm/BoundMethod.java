@@ -0,0 +1,16 @@
+package org.uuu.core.vm;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class BoundMethod {
+    private final Object receiver;
+    private final Closure method;
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package org.uuu.core.vm;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+public class Chunk {
+    private byte[] code = new byte[64];
+    private int[] lines = new int[64];
+    private int count = 0;
+
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    public void write(int b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = (byte) b;
+        lines[count] = line;
+        count++;
+    }
+
+    public void patch(int offset, int b) {
+        code[offset] = (byte) b;
+    }
+
+    public int addConstant(Object value) {
+        // functions are never deduplicated, strings and numbers are
+        if (value instanceof String || value instanceof Double) {
+            Integer i = constantIndex.get(value);
+            if (i != null) return i;
+            constantIndex.put(value, constants.size());
+        }
+        constants.add(value);
+        if (constants.size() > 0xFFFF) throw new RuntimeException("Too many constants in one chunk.");
+        return constants.size() - 1;
+    }
+
+    public int getLine(int offset) {
+        return lines[offset];
+    }
+
+    Object[] constantArray() {
+        return constants.toArray();
+    }
+
+    byte[] trimmedCode() {
+        return Arrays.copyOf(code, count);
+    }
+}
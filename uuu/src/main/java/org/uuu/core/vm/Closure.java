@@ -0,0 +1,19 @@
+package org.uuu.core.vm;
+
+import lombok.Getter;
+
+@Getter
+public class Closure {
+    private final Prototype prototype;
+    final Upvalue[] upvalues;
+
+    public Closure(Prototype prototype) {
+        this.prototype = prototype;
+        this.upvalues = new Upvalue[prototype.getUpvalueCount()];
+    }
+
+    @Override
+    public String toString() {
+        return prototype.toString();
+    }
+}
@@ -0,0 +1,606 @@
+package org.uuu.core.vm;
+
+import org.uuu.core.ast.Visitor;
+import org.uuu.core.ast.expression.*;
+import org.uuu.core.ast.statement.*;
+import org.uuu.core.scanner.Token;
+import org.uuu.core.scanner.TokenType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.uuu.core.vm.OpCode.*;
+
+public class Compiler implements Visitor<Void> {
+
+    private static final int MAX_LOCALS = 256;
+
+    private enum Kind {SCRIPT, FUNCTION, METHOD, INITIALIZER}
+
+    private static class Local {
+        private final String name;
+        private int depth;
+        private boolean captured;
+
+        private Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private record UpvalueRef(int index, boolean local) {}
+
+    private static class Loop {
+        private final Loop enclosing;
+        private final int continueTarget;
+        private final int depth;
+        private final List<Integer> breaks = new ArrayList<>();
+
+        private Loop(Loop enclosing, int continueTarget, int depth) {
+            this.enclosing = enclosing;
+            this.continueTarget = continueTarget;
+            this.depth = depth;
+        }
+    }
+
+    private static class State {
+        private final State enclosing;
+        private final Prototype prototype;
+        private final Kind kind;
+        private final List<Local> locals = new ArrayList<>();
+        private final List<UpvalueRef> upvalues = new ArrayList<>();
+        private int scopeDepth = 0;
+        private Loop loop;
+
+        private State(State enclosing, Prototype prototype, Kind kind) {
+            this.enclosing = enclosing;
+            this.prototype = prototype;
+            this.kind = kind;
+        }
+    }
+
+    private static class ClassState {
+        private final ClassState enclosing;
+        private boolean hasSuper;
+
+        private ClassState(ClassState enclosing) {
+            this.enclosing = enclosing;
+        }
+    }
+
+    private final Globals globals;
+    private final HashSet<String> declared = new HashSet<>();
+    private String initializing;
+    private State current;
+    private ClassState currentClass;
+    private int line;
+
+    public Compiler(Globals globals) {
+        this.globals = globals;
+    }
+
+    public Prototype compile(List<Stmt> statements) {
+        current = new State(null, new Prototype(null), Kind.SCRIPT);
+        current.locals.add(new Local("", 0)); // slot 0 holds the script closure
+        statements.forEach(e -> e.accept(this));
+        emitReturn();
+        return endFunction();
+    }
+
+    @Override
+    public Void accept(Assign assign) {
+        line(assign.getName());
+        assign.getValue().accept(this);
+        namedVariable(assign.getName().getLexeme(), true);
+        return null;
+    }
+
+    @Override
+    public Void accept(Binary binary) {
+        binary.getLeft().accept(this);
+        binary.getRight().accept(this);
+        line(binary.getOperator());
+        switch (binary.getOperator().getType()) {
+            case PLUS -> emit(ADD);
+            case MINUS -> emit(SUBTRACT);
+            case STAR -> emit(MULTIPLY);
+            case SLASH -> emit(DIVIDE);
+            case GREATER -> emit(GREATER);
+            case GREATER_EQUAL -> emit(GREATER_EQUAL);
+            case LESS -> emit(LESS);
+            case LESS_EQUAL -> emit(LESS_EQUAL);
+            case EQUAL_EQUAL -> emit(EQUAL);
+            case BANG_EQUAL -> emit(NOT_EQUAL);
+            default -> throw new RuntimeException("Unsupported binary operator '%s'."
+                                                          .formatted(binary.getOperator().getLexeme()));
+        }
+        return null;
+    }
+
+    @Override
+    public Void accept(Call call) {
+        int argc = call.getArgs().size();
+        if (argc > 255) throw new RuntimeException("Exceeded limit of arguments (255).");
+        if (call.getCallee() instanceof Get get) {
+            get.getObject().accept(this);
+            call.getArgs().forEach(e -> e.accept(this));
+            line(call.getParen());
+            emitShort(INVOKE, identifier(get.getName()));
+            emit(argc);
+        } else if (call.getCallee() instanceof Super aSuper) {
+            checkSuper(aSuper);
+            namedVariable("self", false);
+            call.getArgs().forEach(e -> e.accept(this));
+            namedVariable("super", false);
+            line(call.getParen());
+            emitShort(SUPER_INVOKE, identifier(aSuper.getMethod()));
+            emit(argc);
+        } else {
+            call.getCallee().accept(this);
+            call.getArgs().forEach(e -> e.accept(this));
+            line(call.getParen());
+            emit(CALL);
+            emit(argc);
+        }
+        return null;
+    }
+
+    @Override
+    public Void accept(Literal literal) {
+        Object value = literal.getValue();
+        if (value == null) emit(NULL);
+        else if (value.equals(Boolean.TRUE)) emit(TRUE);
+        else if (value.equals(Boolean.FALSE)) emit(FALSE);
+        else emitShort(CONSTANT, chunk().addConstant(value));
+        return null;
+    }
+
+    @Override
+    public Void accept(Unary unary) {
+        unary.getRight().accept(this);
+        line(unary.getOperator());
+        switch (unary.getOperator().getType()) {
+            case MINUS -> emit(NEGATE);
+            case BANG -> emit(NOT);
+            default -> throw new RuntimeException("Unsupported unary operator '%s'."
+                                                          .formatted(unary.getOperator().getLexeme()));
+        }
+        return null;
+    }
+
+    @Override
+    public Void accept(Ternary ternary) {
+        ternary.getCondition().accept(this);
+        int elseJump = emitJump(JUMP_IF_FALSE);
+        ternary.getOnTrue().accept(this);
+        int endJump = emitJump(JUMP);
+        patchJump(elseJump);
+        ternary.getOnFalse().accept(this);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void accept(Group group) {
+        group.getExpression().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void accept(ExprStmt exprStmt) {
+        exprStmt.getExpression().accept(this);
+        emit(POP);
+        return null;
+    }
+
+    @Override
+    public Void accept(Var var) {
+        line(var.getName());
+        String name = var.getName().getLexeme();
+        if (isGlobalScope()) {
+            declareGlobal(name);
+            initializing = name;
+            if (var.getInitializer() != null) var.getInitializer().accept(this);
+            else emit(NULL);
+            initializing = null;
+            emitShort(DEFINE_GLOBAL, globals.slot(name));
+        } else {
+            declareLocal(name);
+            if (var.getInitializer() != null) var.getInitializer().accept(this);
+            else emit(NULL);
+            markInitialized();
+        }
+        return null;
+    }
+
+    @Override
+    public Void accept(Variable variable) {
+        line(variable.getName());
+        String name = variable.getName().getLexeme();
+        if (isGlobalScope() && name.equals(initializing))
+            throw new RuntimeException("Cannot read local variable in its own initializer.");
+        namedVariable(name, false);
+        return null;
+    }
+
+    @Override
+    public Void accept(Block block) {
+        beginScope();
+        block.getStatements().forEach(e -> e.accept(this));
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void accept(If anIf) {
+        anIf.getCondition().accept(this);
+        int elseJump = emitJump(JUMP_IF_FALSE);
+        anIf.getOnTrue().accept(this);
+        if (anIf.getOnFalse() == null) {
+            patchJump(elseJump);
+            return null;
+        }
+        int endJump = emitJump(JUMP);
+        patchJump(elseJump);
+        anIf.getOnFalse().accept(this);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void accept(Logic logic) {
+        logic.getLeft().accept(this);
+        line(logic.getOperator());
+        int jump = emitJump(logic.getOperator().getType() == TokenType.OR ? OR : AND);
+        logic.getRight().accept(this);
+        patchJump(jump);
+        return null;
+    }
+
+    @Override
+    public Void accept(While aWhile) {
+        int start = chunk().getCount();
+        aWhile.getCondition().accept(this);
+        int exitJump = emitJump(JUMP_IF_FALSE);
+        loopBody(aWhile.getBody(), start);
+        patchJump(exitJump);
+        endLoop();
+        return null;
+    }
+
+    @Override
+    public Void accept(For aFor) {
+        // the initializer lives in the enclosing scope, same as in the tree-walking interpreter
+        if (aFor.getInitializer() != null) aFor.getInitializer().accept(this);
+        int start = chunk().getCount();
+        int exitJump = -1;
+        if (aFor.getCondition() != null) {
+            aFor.getCondition().accept(this);
+            exitJump = emitJump(JUMP_IF_FALSE);
+        }
+        if (aFor.getIncrement() != null) {
+            int bodyJump = emitJump(JUMP);
+            int increment = chunk().getCount();
+            aFor.getIncrement().accept(this);
+            emit(POP);
+            emitLoop(start);
+            start = increment;
+            patchJump(bodyJump);
+        }
+        loopBody(aFor.getBody(), start);
+        if (exitJump != -1) patchJump(exitJump);
+        endLoop();
+        return null;
+    }
+
+    // A body without braces, such as an inner for, can still push a local, which then has to be popped on every
+    // iteration. At global depth a declaration defines a global, which is simply redefined.
+    private void loopBody(Stmt body, int continueTarget) {
+        current.loop = new Loop(current.loop, continueTarget, current.scopeDepth);
+        boolean scoped = current.scopeDepth > 0;
+        if (scoped) beginScope();
+        body.accept(this);
+        if (scoped) endScope();
+        emitLoop(continueTarget);
+    }
+
+    private void endLoop() {
+        current.loop.breaks.forEach(this::patchJump);
+        current.loop = current.loop.enclosing;
+    }
+
+    @Override
+    public Void accept(BreakStmt breakStmt) {
+        line(breakStmt.getKeyword());
+        if (current.loop == null) throw new RuntimeException("Cannot use 'break' outside of a loop.");
+        discardLocals(current.loop.depth);
+        current.loop.breaks.add(emitJump(JUMP));
+        return null;
+    }
+
+    @Override
+    public Void accept(ContinueStmt continueStmt) {
+        line(continueStmt.getKeyword());
+        if (current.loop == null) throw new RuntimeException("Cannot use 'continue' outside of a loop.");
+        discardLocals(current.loop.depth);
+        emitLoop(current.loop.continueTarget);
+        return null;
+    }
+
+    @Override
+    public Void accept(Fn fn) {
+        line(fn.getName());
+        if (isGlobalScope()) {
+            declareGlobal(fn.getLexeme());
+            function(fn, Kind.FUNCTION);
+            emitShort(DEFINE_GLOBAL, globals.slot(fn.getLexeme()));
+        } else {
+            declareLocal(fn.getLexeme());
+            markInitialized();
+            function(fn, Kind.FUNCTION);
+        }
+        return null;
+    }
+
+    @Override
+    public Void accept(Return aReturn) {
+        if (current.kind == Kind.SCRIPT) throw new RuntimeException("Cannot return from top-level code.");
+        if (aReturn.getValue() == null) emitReturn();
+        else if (current.kind == Kind.INITIALIZER) {
+            aReturn.getValue().accept(this);
+            emit(POP);
+            emitReturn();
+        } else {
+            aReturn.getValue().accept(this);
+            emit(RETURN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void accept(ClassStmt aClass) {
+        Token name = aClass.getName();
+        line(name);
+        boolean global = isGlobalScope();
+        if (global) declareGlobal(name.getLexeme());
+        else declareLocal(name.getLexeme());
+        emitShort(CLASS, identifier(name));
+        if (global) emitShort(DEFINE_GLOBAL, globals.slot(name.getLexeme()));
+        else markInitialized();
+
+        ClassState classState = new ClassState(currentClass);
+        currentClass = classState;
+        if (aClass.getSuperclass() != null) {
+            if (aClass.getSuperclass().getName().getLexeme().equals(name.getLexeme()))
+                throw new RuntimeException("Cannot inherit from itself.");
+            aClass.getSuperclass().accept(this);
+            beginScope();
+            addLocal("super");
+            markInitialized();
+            namedVariable(name.getLexeme(), false);
+            emit(INHERIT);
+            classState.hasSuper = true;
+        }
+        namedVariable(name.getLexeme(), false);
+        for (Fn method : aClass.getMethods()) {
+            line(method.getName());
+            function(method, method.getLexeme().equals("init") ? Kind.INITIALIZER : Kind.METHOD);
+            emitShort(METHOD, identifier(method.getName()));
+        }
+        emit(POP);
+        if (classState.hasSuper) endScope();
+        currentClass = classState.enclosing;
+        return null;
+    }
+
+    @Override
+    public Void accept(Get get) {
+        get.getObject().accept(this);
+        line(get.getName());
+        emitShort(GET_PROPERTY, identifier(get.getName()));
+        return null;
+    }
+
+    @Override
+    public Void accept(Set set) {
+        set.getObject().accept(this);
+        set.getValue().accept(this);
+        line(set.getName());
+        emitShort(SET_PROPERTY, identifier(set.getName()));
+        return null;
+    }
+
+    @Override
+    public Void accept(Self self) {
+        line(self.getKeyword());
+        if (currentClass == null) throw new RuntimeException("Cannot use 'self' outside of a class.");
+        namedVariable("self", false);
+        return null;
+    }
+
+    @Override
+    public Void accept(Super aSuper) {
+        checkSuper(aSuper);
+        namedVariable("self", false);
+        namedVariable("super", false);
+        emitShort(GET_SUPER, identifier(aSuper.getMethod()));
+        return null;
+    }
+
+    private void checkSuper(Super aSuper) {
+        line(aSuper.getKeyword());
+        if (currentClass == null) throw new RuntimeException("Cannot use 'super' outside of a class.");
+        if (!currentClass.hasSuper) throw new RuntimeException("Cannot use 'super' in a class with no superclass.");
+    }
+
+    private void function(Fn fn, Kind kind) {
+        State state = new State(current, new Prototype(fn.getLexeme()), kind);
+        current = state;
+        state.locals.add(new Local(kind == Kind.FUNCTION ? "" : "self", 0));
+        beginScope();
+        if (fn.getParams().size() > 255) throw new RuntimeException("Exceeded limit of parameters (255).");
+        state.prototype.setArity(fn.getParams().size());
+        fn.getParams().forEach(e -> {
+            declareLocal(e.getLexeme());
+            markInitialized();
+        });
+        fn.getBody().forEach(e -> e.accept(this));
+        emitReturn();
+        Prototype prototype = endFunction();
+        emitShort(CLOSURE, chunk().addConstant(prototype));
+        state.upvalues.forEach(e -> {
+            emit(e.local() ? 1 : 0);
+            emit(e.index());
+        });
+    }
+
+    private Prototype endFunction() {
+        Prototype prototype = current.prototype;
+        prototype.setUpvalueCount(current.upvalues.size());
+        prototype.finish();
+        current = current.enclosing;
+        return prototype;
+    }
+
+    private void namedVariable(String name, boolean assign) {
+        int arg = resolveLocal(current, name);
+        if (arg != -1) {
+            emit(assign ? SET_LOCAL : GET_LOCAL);
+            emit(arg);
+        } else if ((arg = resolveUpvalue(current, name)) != -1) {
+            emit(assign ? SET_UPVALUE : GET_UPVALUE);
+            emit(arg);
+        } else emitShort(assign ? SET_GLOBAL : GET_GLOBAL, globals.slot(name));
+    }
+
+    private int resolveLocal(State state, String name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            Local local = state.locals.get(i);
+            if (!local.name.equals(name)) continue;
+            if (local.depth == -1) throw new RuntimeException("Cannot read local variable in its own initializer.");
+            return i;
+        }
+        return -1;
+    }
+
+    private int resolveUpvalue(State state, String name) {
+        if (state.enclosing == null) return -1;
+        int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            state.enclosing.locals.get(local).captured = true;
+            return addUpvalue(state, local, true);
+        }
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue != -1) return addUpvalue(state, upvalue, false);
+        return -1;
+    }
+
+    private int addUpvalue(State state, int index, boolean local) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            UpvalueRef ref = state.upvalues.get(i);
+            if (ref.index() == index && ref.local() == local) return i;
+        }
+        if (state.upvalues.size() == MAX_LOCALS) throw new RuntimeException("Too many closure variables in function.");
+        state.upvalues.add(new UpvalueRef(index, local));
+        return state.upvalues.size() - 1;
+    }
+
+    private boolean isGlobalScope() {
+        return current.kind == Kind.SCRIPT && current.scopeDepth == 0;
+    }
+
+    private void declareGlobal(String name) {
+        if (!declared.add(name))
+            throw new RuntimeException("Variable with name '%s' already defined in the scope.".formatted(name));
+    }
+
+    private void declareLocal(String name) {
+        for (int i = current.locals.size() - 1; i >= 0; i--) {
+            Local local = current.locals.get(i);
+            if (local.depth != -1 && local.depth < current.scopeDepth) break;
+            if (local.name.equals(name))
+                throw new RuntimeException("Variable with name '%s' already defined in the scope.".formatted(name));
+        }
+        addLocal(name);
+    }
+
+    private void addLocal(String name) {
+        if (current.locals.size() == MAX_LOCALS) throw new RuntimeException("Too many local variables in function.");
+        current.locals.add(new Local(name, -1));
+    }
+
+    private void markInitialized() {
+        current.locals.get(current.locals.size() - 1).depth = current.scopeDepth;
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            emit(locals.get(locals.size() - 1).captured ? CLOSE_UPVALUE : POP);
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    private void discardLocals(int depth) {
+        for (int i = current.locals.size() - 1; i >= 0 && current.locals.get(i).depth > depth; i--)
+            emit(current.locals.get(i).captured ? CLOSE_UPVALUE : POP);
+    }
+
+    private int identifier(Token name) {
+        return chunk().addConstant(name.getLexeme());
+    }
+
+    private void emitReturn() {
+        if (current.kind == Kind.INITIALIZER) {
+            emit(GET_LOCAL);
+            emit(0);
+        } else emit(NULL);
+        emit(RETURN);
+    }
+
+    private int emitJump(byte op) {
+        emit(op);
+        emit(0xFF);
+        emit(0xFF);
+        return chunk().getCount() - 2;
+    }
+
+    private void patchJump(int offset) {
+        int jump = chunk().getCount() - offset - 2;
+        if (jump > 0xFFFF) throw new RuntimeException("Too much code to jump over.");
+        chunk().patch(offset, (jump >> 8) & 0xFF);
+        chunk().patch(offset + 1, jump & 0xFF);
+    }
+
+    private void emitLoop(int start) {
+        emit(LOOP);
+        int offset = chunk().getCount() - start + 2;
+        if (offset > 0xFFFF) throw new RuntimeException("Loop body too large.");
+        emit((offset >> 8) & 0xFF);
+        emit(offset & 0xFF);
+    }
+
+    private void emitShort(byte op, int operand) {
+        emit(op);
+        emit((operand >> 8) & 0xFF);
+        emit(operand & 0xFF);
+    }
+
+    private void emit(int b) {
+        chunk().write(b, line);
+    }
+
+    private void line(Token token) {
+        if (token != null) line = token.getLine();
+    }
+
+    private Chunk chunk() {
+        return current.prototype.getChunk();
+    }
+}
@@ -0,0 +1,43 @@
+package org.uuu.core.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class Globals {
+    static final Object UNDEFINED = new Object();
+
+    private final Map<String, Integer> index = new HashMap<>();
+    String[] names = new String[16];
+    Object[] values = new Object[16];
+
+    int slot(String name) {
+        Integer i = index.get(name);
+        if (i != null) return i;
+        int slot = index.size();
+        if (slot > 0xFFFF) throw new RuntimeException("Too many global variables.");
+        if (slot == values.length) {
+            names = Arrays.copyOf(names, slot * 2);
+            values = Arrays.copyOf(values, slot * 2);
+        }
+        names[slot] = name;
+        values[slot] = UNDEFINED;
+        index.put(name, slot);
+        return slot;
+    }
+
+    public void define(String name, Object value) {
+        values[slot(name)] = value;
+    }
+
+    public boolean isDefined(String name) {
+        Integer i = index.get(name);
+        return i != null && values[i] != UNDEFINED;
+    }
+
+    public Object get(String name) {
+        Integer i = index.get(name);
+        if (i == null || values[i] == UNDEFINED) throw new RuntimeException("Undefined variable '" + name + "'.");
+        return values[i];
+    }
+}
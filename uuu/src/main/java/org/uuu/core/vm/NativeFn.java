@@ -0,0 +1,21 @@
+package org.uuu.core.vm;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class NativeFn {
+    private final String name;
+    private final int arity;
+    private final Body body;
+
+    public interface Body {
+        Object call(Object[] args, int from);
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn: %s>".formatted(name);
+    }
+}
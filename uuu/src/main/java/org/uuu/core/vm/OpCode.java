@@ -0,0 +1,67 @@
+package org.uuu.core.vm;
+
+public final class OpCode {
+    public static final byte CONSTANT = 0;
+    public static final byte NULL = 1;
+    public static final byte TRUE = 2;
+    public static final byte FALSE = 3;
+    public static final byte POP = 4;
+
+    public static final byte GET_LOCAL = 5;
+    public static final byte SET_LOCAL = 6;
+    public static final byte GET_GLOBAL = 7;
+    public static final byte DEFINE_GLOBAL = 8;
+    public static final byte SET_GLOBAL = 9;
+    public static final byte GET_UPVALUE = 10;
+    public static final byte SET_UPVALUE = 11;
+    public static final byte GET_PROPERTY = 12;
+    public static final byte SET_PROPERTY = 13;
+    public static final byte GET_SUPER = 14;
+
+    public static final byte EQUAL = 15;
+    public static final byte NOT_EQUAL = 16;
+    public static final byte GREATER = 17;
+    public static final byte GREATER_EQUAL = 18;
+    public static final byte LESS = 19;
+    public static final byte LESS_EQUAL = 20;
+    public static final byte ADD = 21;
+    public static final byte SUBTRACT = 22;
+    public static final byte MULTIPLY = 23;
+    public static final byte DIVIDE = 24;
+    public static final byte NOT = 25;
+    public static final byte NEGATE = 26;
+
+    public static final byte JUMP = 27;
+    public static final byte JUMP_IF_FALSE = 28;
+    public static final byte AND = 29;
+    public static final byte OR = 30;
+    public static final byte LOOP = 31;
+
+    public static final byte CALL = 32;
+    public static final byte INVOKE = 33;
+    public static final byte SUPER_INVOKE = 34;
+    public static final byte CLOSURE = 35;
+    public static final byte CLOSE_UPVALUE = 36;
+    public static final byte RETURN = 37;
+
+    public static final byte CLASS = 38;
+    public static final byte INHERIT = 39;
+    public static final byte METHOD = 40;
+
+    private static final String[] NAMES = {
+            "CONSTANT", "NULL", "TRUE", "FALSE", "POP",
+            "GET_LOCAL", "SET_LOCAL", "GET_GLOBAL", "DEFINE_GLOBAL", "SET_GLOBAL", "GET_UPVALUE", "SET_UPVALUE",
+            "GET_PROPERTY", "SET_PROPERTY", "GET_SUPER",
+            "EQUAL", "NOT_EQUAL", "GREATER", "GREATER_EQUAL", "LESS", "LESS_EQUAL",
+            "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE", "NOT", "NEGATE",
+            "JUMP", "JUMP_IF_FALSE", "AND", "OR", "LOOP",
+            "CALL", "INVOKE", "SUPER_INVOKE", "CLOSURE", "CLOSE_UPVALUE", "RETURN",
+            "CLASS", "INHERIT", "METHOD",
+    };
+
+    private OpCode() {}
+
+    public static String name(byte op) {
+        return op >= 0 && op < NAMES.length ? NAMES[op] : "UNKNOWN(" + op + ")";
+    }
+}
@@ -0,0 +1,36 @@
+package org.uuu.core.vm;
+
+import lombok.Getter;
+
+@Getter
+public class Prototype {
+    private final String name;
+    private final Chunk chunk = new Chunk();
+    private int arity;
+    private int upvalueCount;
+
+    byte[] code;
+    Object[] constants;
+
+    public Prototype(String name) {
+        this.name = name;
+    }
+
+    void setArity(int arity) {
+        this.arity = arity;
+    }
+
+    void setUpvalueCount(int upvalueCount) {
+        this.upvalueCount = upvalueCount;
+    }
+
+    void finish() {
+        code = chunk.trimmedCode();
+        constants = chunk.constantArray();
+    }
+
+    @Override
+    public String toString() {
+        return name == null ? "<script>" : "<fn:" + name + ">";
+    }
+}
@@ -0,0 +1,13 @@
+package org.uuu.core.vm;
+
+class Upvalue {
+    final int slot;
+    Object closed;
+    boolean open = true;
+    Upvalue next;
+
+    Upvalue(int slot, Upvalue next) {
+        this.slot = slot;
+        this.next = next;
+    }
+}
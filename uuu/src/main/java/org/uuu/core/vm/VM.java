@@ -0,0 +1,417 @@
+package org.uuu.core.vm;
+
+import org.uuu.core.ast.statement.Stmt;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static org.uuu.core.vm.OpCode.*;
+
+public class VM {
+
+    private static final int FRAMES_MAX = 4096;
+    private static final int FRAME_RESERVE = 512;
+    // what run returns when it used up its fuel, the frames hold where to resume
+    private static final Object SUSPENDED = new Object();
+
+    private static class Frame {
+        private Closure closure;
+        private int ip;
+        private int base;
+    }
+
+    private final Globals globals = new Globals();
+    private final Frame[] frames = new Frame[FRAMES_MAX];
+    private int frameCount = 0;
+
+    private Object[] stack = new Object[FRAME_RESERVE * 4];
+    private int sp = 0;
+    private Upvalue openUpvalues;
+
+    public VM() {
+        for (int i = 0; i < FRAMES_MAX; i++) frames[i] = new Frame();
+        globals.define("clock", new NativeFn("clock", 0, (args, from) -> System.currentTimeMillis()));
+        globals.define("print", new NativeFn("print", 1, (args, from) -> {
+            System.out.println(args[from]);
+            return null;
+        }));
+    }
+
+    public VM interpret(List<Stmt> statements) {
+        start(statements);
+        run(-1);
+        return this;
+    }
+
+    // compiles the script and gets it ready to run, without running any of it
+    public VM start(List<Stmt> statements) {
+        Prototype script = new Compiler(globals).compile(statements);
+        Closure closure = new Closure(script);
+        sp = 0;
+        frameCount = 0;
+        openUpvalues = null;
+        push(closure);
+        call(closure, 0);
+        return this;
+    }
+
+    // Runs the started script until it ends or has made fuel loop back-edges and calls. Everything it needs to go
+    // on is in the frames and the stack, so it can be resumed later on any thread. True once the script has ended.
+    public boolean resume(long fuel) {
+        if (fuel <= 0) throw new RuntimeException("Fuel must be positive, got %d.".formatted(fuel));
+        if (frameCount == 0) return true;
+        return run(fuel) != SUSPENDED;
+    }
+
+    public boolean isDone() {
+        return frameCount == 0;
+    }
+
+    public Object getGlobal(String name) {
+        return globals.get(name);
+    }
+
+    public Globals getGlobals() {
+        return globals;
+    }
+
+    // a negative fuel never runs out
+    private Object run(long fuel) {
+        Frame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.getPrototype().code;
+        Object[] constants = frame.closure.getPrototype().constants;
+        int ip = frame.ip;
+        int base = frame.base;
+
+        while (true) {
+            try {
+                switch (code[ip++]) {
+                    case CONSTANT -> {
+                        stack[sp++] = constants[((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)];
+                        ip += 2;
+                    }
+                    case NULL -> stack[sp++] = null;
+                    case TRUE -> stack[sp++] = Boolean.TRUE;
+                    case FALSE -> stack[sp++] = Boolean.FALSE;
+                    case POP -> sp--;
+                    case GET_LOCAL -> stack[sp++] = stack[base + (code[ip++] & 0xFF)];
+                    case SET_LOCAL -> stack[base + (code[ip++] & 0xFF)] = stack[sp - 1];
+                    case GET_GLOBAL -> {
+                        int slot = ((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF);
+                        ip += 2;
+                        Object value = globals.values[slot];
+                        if (value == Globals.UNDEFINED)
+                            throw new RuntimeException("Undefined variable '" + globals.names[slot] + "'.");
+                        stack[sp++] = value;
+                    }
+                    case DEFINE_GLOBAL -> {
+                        globals.values[((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)] = stack[--sp];
+                        ip += 2;
+                    }
+                    case SET_GLOBAL -> {
+                        int slot = ((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF);
+                        ip += 2;
+                        if (globals.values[slot] == Globals.UNDEFINED)
+                            throw new RuntimeException("Undefined variable '" + globals.names[slot] + "'.");
+                        globals.values[slot] = stack[sp - 1];
+                    }
+                    case GET_UPVALUE -> {
+                        Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xFF];
+                        stack[sp++] = upvalue.open ? stack[upvalue.slot] : upvalue.closed;
+                    }
+                    case SET_UPVALUE -> {
+                        Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xFF];
+                        if (upvalue.open) stack[upvalue.slot] = stack[sp - 1];
+                        else upvalue.closed = stack[sp - 1];
+                    }
+                    case GET_PROPERTY -> {
+                        String name = (String) constants[((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)];
+                        ip += 2;
+                        if (!(stack[sp - 1] instanceof VmInstance instance))
+                            throw new RuntimeException("Not an instance: '%s'.".formatted(name));
+                        Object value = instance.fields.get(name);
+                        if (value != null || instance.fields.containsKey(name)) stack[sp - 1] = value;
+                        else stack[sp - 1] = bindMethod(instance.getVmClass(), instance, name);
+                    }
+                    case SET_PROPERTY -> {
+                        String name = (String) constants[((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)];
+                        ip += 2;
+                        if (!(stack[sp - 2] instanceof VmInstance instance))
+                            throw new RuntimeException("Expecting instance.");
+                        Object value = stack[--sp];
+                        instance.fields.put(name, value);
+                        stack[sp - 1] = value;
+                    }
+                    case GET_SUPER -> {
+                        String name = (String) constants[((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)];
+                        ip += 2;
+                        VmClass superclass = (VmClass) stack[--sp];
+                        stack[sp - 1] = bindMethod(superclass, stack[sp - 1], name);
+                    }
+                    case EQUAL -> {
+                        Object b = stack[--sp];
+                        stack[sp - 1] = Objects.equals(stack[sp - 1], b);
+                    }
+                    case NOT_EQUAL -> {
+                        Object b = stack[--sp];
+                        stack[sp - 1] = !Objects.equals(stack[sp - 1], b);
+                    }
+                    case GREATER -> {
+                        double b = number(stack[--sp]);
+                        stack[sp - 1] = number(stack[sp - 1]) > b;
+                    }
+                    case GREATER_EQUAL -> {
+                        double b = number(stack[--sp]);
+                        stack[sp - 1] = number(stack[sp - 1]) >= b;
+                    }
+                    case LESS -> {
+                        double b = number(stack[--sp]);
+                        stack[sp - 1] = number(stack[sp - 1]) < b;
+                    }
+                    case LESS_EQUAL -> {
+                        double b = number(stack[--sp]);
+                        stack[sp - 1] = number(stack[sp - 1]) <= b;
+                    }
+                    case ADD -> {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if (a instanceof Double x && b instanceof Double y) stack[sp - 1] = x + y;
+                        else if (a instanceof String x && b instanceof String y) stack[sp - 1] = x + y;
+                        else stack[sp - 1] = null;
+                    }
+                    case SUBTRACT -> {
+                        double b = number(stack[--sp]);
+                        stack[sp - 1] = number(stack[sp - 1]) - b;
+                    }
+                    case MULTIPLY -> {
+                        double b = number(stack[--sp]);
+                        stack[sp - 1] = number(stack[sp - 1]) * b;
+                    }
+                    case DIVIDE -> {
+                        double b = number(stack[--sp]);
+                        stack[sp - 1] = number(stack[sp - 1]) / b;
+                    }
+                    case NOT -> stack[sp - 1] = !bool(stack[sp - 1]);
+                    case NEGATE -> stack[sp - 1] = -number(stack[sp - 1]);
+                    case JUMP -> ip += (((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)) + 2;
+                    case JUMP_IF_FALSE -> {
+                        if (bool(stack[--sp])) ip += 2;
+                        else ip += (((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)) + 2;
+                    }
+                    case AND -> {
+                        if (bool(stack[sp - 1])) {
+                            sp--;
+                            ip += 2;
+                        } else ip += (((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)) + 2;
+                    }
+                    case OR -> {
+                        if (!bool(stack[sp - 1])) {
+                            sp--;
+                            ip += 2;
+                        } else ip += (((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)) + 2;
+                    }
+                    case LOOP -> {
+                        ip -= (((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)) - 2;
+                        if (--fuel == 0) {
+                            frame.ip = ip;
+                            return SUSPENDED;
+                        }
+                    }
+                    case CALL -> {
+                        int argc = code[ip++] & 0xFF;
+                        frame.ip = ip;
+                        callValue(stack[sp - argc - 1], argc);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.getPrototype().code;
+                        constants = frame.closure.getPrototype().constants;
+                        ip = frame.ip;
+                        base = frame.base;
+                        if (--fuel == 0) return SUSPENDED;
+                    }
+                    case INVOKE -> {
+                        String name = (String) constants[((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)];
+                        int argc = code[ip + 2] & 0xFF;
+                        ip += 3;
+                        frame.ip = ip;
+                        invoke(name, argc);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.getPrototype().code;
+                        constants = frame.closure.getPrototype().constants;
+                        ip = frame.ip;
+                        base = frame.base;
+                        if (--fuel == 0) return SUSPENDED;
+                    }
+                    case SUPER_INVOKE -> {
+                        String name = (String) constants[((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)];
+                        int argc = code[ip + 2] & 0xFF;
+                        ip += 3;
+                        frame.ip = ip;
+                        invokeFromClass((VmClass) stack[--sp], name, argc);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.getPrototype().code;
+                        constants = frame.closure.getPrototype().constants;
+                        ip = frame.ip;
+                        base = frame.base;
+                        if (--fuel == 0) return SUSPENDED;
+                    }
+                    case CLOSURE -> {
+                        Prototype prototype = (Prototype) constants[((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)];
+                        ip += 2;
+                        Closure closure = new Closure(prototype);
+                        for (int i = 0; i < closure.upvalues.length; i++) {
+                            boolean local = code[ip++] == 1;
+                            int index = code[ip++] & 0xFF;
+                            closure.upvalues[i] = local ? captureUpvalue(base + index) : frame.closure.upvalues[index];
+                        }
+                        stack[sp++] = closure;
+                    }
+                    case CLOSE_UPVALUE -> {
+                        closeUpvalues(sp - 1);
+                        sp--;
+                    }
+                    case RETURN -> {
+                        Object result = stack[--sp];
+                        closeUpvalues(base);
+                        frameCount--;
+                        if (frameCount == 0) {
+                            sp = 0;
+                            return result;
+                        }
+                        sp = base;
+                        stack[sp++] = result;
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.getPrototype().code;
+                        constants = frame.closure.getPrototype().constants;
+                        ip = frame.ip;
+                        base = frame.base;
+                    }
+                    case CLASS -> {
+                        stack[sp++] = new VmClass((String) constants[((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)]);
+                        ip += 2;
+                    }
+                    case INHERIT -> {
+                        if (!(stack[sp - 2] instanceof VmClass superclass))
+                            throw new RuntimeException("'%s' is not a class.".formatted(stack[sp - 2]));
+                        VmClass subclass = (VmClass) stack[--sp];
+                        subclass.methods.putAll(superclass.methods);
+                        subclass.init = superclass.init;
+                    }
+                    case METHOD -> {
+                        String name = (String) constants[((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF)];
+                        ip += 2;
+                        Closure method = (Closure) stack[--sp];
+                        VmClass vmClass = (VmClass) stack[sp - 1];
+                        vmClass.methods.put(name, method);
+                        if (name.equals("init")) vmClass.init = method;
+                    }
+                    default -> throw new IllegalStateException("Unknown opcode " + code[ip - 1]);
+                }
+            } catch (RuntimeException e) {
+                frame.ip = ip;
+                throw runtimeError(e);
+            }
+        }
+    }
+
+    private void callValue(Object callee, int argc) {
+        if (callee instanceof Closure closure) call(closure, argc);
+        else if (callee instanceof BoundMethod bound) {
+            stack[sp - argc - 1] = bound.getReceiver();
+            call(bound.getMethod(), argc);
+        } else if (callee instanceof VmClass vmClass) {
+            stack[sp - argc - 1] = new VmInstance(vmClass);
+            if (vmClass.init != null) call(vmClass.init, argc);
+            else if (argc != 0) throw new RuntimeException("Expected 0 arguments, got %d.".formatted(argc));
+        } else if (callee instanceof NativeFn fn) {
+            if (fn.getArity() != argc)
+                throw new RuntimeException("Expected %d arguments, got %d.".formatted(fn.getArity(), argc));
+            Object result = fn.getBody().call(stack, sp - argc);
+            sp -= argc + 1;
+            stack[sp++] = result;
+        } else throw new RuntimeException("%s is not a function.".formatted(callee));
+    }
+
+    private void call(Closure closure, int argc) {
+        if (closure.getPrototype().getArity() != argc)
+            throw new RuntimeException("Expected %d arguments, got %d.".formatted(closure.getPrototype().getArity(), argc));
+        if (frameCount == FRAMES_MAX) throw new RuntimeException("Stack overflow.");
+        if (sp + FRAME_RESERVE > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+        Frame frame = frames[frameCount++];
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = sp - argc - 1;
+    }
+
+    private void invoke(String name, int argc) {
+        Object receiver = stack[sp - argc - 1];
+        if (!(receiver instanceof VmInstance instance)) throw new RuntimeException("Not an instance: '%s'.".formatted(name));
+        Object field = instance.fields.get(name);
+        if (field != null || instance.fields.containsKey(name)) {
+            stack[sp - argc - 1] = field;
+            callValue(field, argc);
+        } else invokeFromClass(instance.getVmClass(), name, argc);
+    }
+
+    private void invokeFromClass(VmClass vmClass, String name, int argc) {
+        Closure method = vmClass.methods.get(name);
+        if (method == null) throw new RuntimeException("Undefined property '%s'.".formatted(name));
+        call(method, argc);
+    }
+
+    private BoundMethod bindMethod(VmClass vmClass, Object receiver, String name) {
+        Closure method = vmClass.methods.get(name);
+        if (method == null) throw new RuntimeException("Undefined property '%s'.".formatted(name));
+        return new BoundMethod(receiver, method);
+    }
+
+    private Upvalue captureUpvalue(int slot) {
+        Upvalue prev = null;
+        Upvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            prev = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+        Upvalue created = new Upvalue(slot, upvalue);
+        if (prev == null) openUpvalues = created;
+        else prev.next = created;
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            Upvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.open = false;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private void push(Object value) {
+        stack[sp++] = value;
+    }
+
+    private RuntimeException runtimeError(RuntimeException e) {
+        StringBuilder trace = new StringBuilder(String.valueOf(e.getMessage()));
+        for (int i = frameCount - 1; i >= 0; i--) {
+            Prototype prototype = frames[i].closure.getPrototype();
+            int offset = Math.max(frames[i].ip - 1, 0);
+            trace.append("\n  [line %d] in %s".formatted(prototype.getChunk().getLine(offset), prototype));
+        }
+        frameCount = 0;
+        sp = 0;
+        openUpvalues = null;
+        return new RuntimeException(trace.toString(), e);
+    }
+
+    private static double number(Object value) {
+        if (value instanceof Double d) return d;
+        throw new RuntimeException("Operand must be a number, got '%s'.".formatted(value));
+    }
+
+    private static boolean bool(Object value) {
+        if (value instanceof Boolean b) return b;
+        throw new RuntimeException("Operand must be a boolean, got '%s'.".formatted(value));
+    }
+}
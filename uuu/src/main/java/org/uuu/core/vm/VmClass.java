@@ -0,0 +1,22 @@
+package org.uuu.core.vm;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+public class VmClass {
+    private final String name;
+    final Map<String, Closure> methods = new HashMap<>();
+    Closure init;
+
+    public VmClass(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return "<class: %s>".formatted(name);
+    }
+}
@@ -0,0 +1,21 @@
+package org.uuu.core.vm;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+public class VmInstance {
+    private final VmClass vmClass;
+    final Map<String, Object> fields = new HashMap<>();
+
+    public VmInstance(VmClass vmClass) {
+        this.vmClass = vmClass;
+    }
+
+    @Override
+    public String toString() {
+        return "<instance of: %s>".formatted(vmClass.getName());
+    }
+}
@@ -0,0 +1,75 @@
+package org.uuu.core;
+
+import org.junit.jupiter.api.Test;
+import org.uuu.core.interpreter.Interpreter;
+import org.uuu.core.scanner.Token;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FrontEndTest {
+
+    @Test
+    public void testLinkFiles() throws IOException {
+        Path directory = Files.createTempDirectory("front");
+        try {
+            List<Path> files = new ArrayList<>();
+            // every file uses functions declared by the ones after it, they are only called at the end
+            for (int i = 0; i < 20; i++)
+                files.add(write(directory, "f" + i + ".uuu", "fn f%d(x) { return %s; }".formatted(i, i == 19 ? "x" : "f" + (i + 1) + "(x + 1)")));
+            files.add(write(directory, "main.uuu", "class A { fn get() { return f0(1); } }\nvar r = A().get();"));
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                Interpreter interpreter = Interpreter.resolved(FrontEnd.compile(files, pool), false).interpret();
+                assertEquals(20d, interpreter.getGlobals().get(Token.ofIdent("r", 0, 0)));
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testErrorOrder() throws IOException {
+        Path directory = Files.createTempDirectory("front");
+        try {
+            Path a = write(directory, "a.uuu", "var = 1;");
+            Path b = write(directory, "b.uuu", "var ok = 1;");
+            Path c = write(directory, "c.uuu", "fn f( {");
+            Path big = write(directory, "big.uuu", "var x = 1;\n".repeat(50000) + "var = 2;");
+            for (int round = 0; round < 5; round++) {
+                RuntimeException error = assertThrows(RuntimeException.class, () -> FrontEnd.compile(List.of(big, a, b, c)));
+                String[] lines = error.getMessage().split("\n");
+                assertEquals(3, lines.length);
+                assertEquals(big + ": ", lines[0].substring(0, big.toString().length() + 2));
+                assertEquals(a + ": Expected identifier after var. 0|4", lines[1]);
+                assertEquals(c.toString(), lines[2].substring(0, c.toString().length()));
+            }
+            Path d = write(directory, "d.uuu", "fn ok() {}");
+            RuntimeException duplicate = assertThrows(RuntimeException.class, () -> FrontEnd.compile(List.of(b, d)));
+            assertEquals(d + ": Variable with name 'ok' already defined in the scope.", duplicate.getMessage());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static Path write(Path directory, String name, String code) throws IOException {
+        return Files.writeString(directory.resolve(name), code);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(e -> e.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.uuu.core;
+
+import org.junit.jupiter.api.Test;
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.scanner.Scanner;
+import org.uuu.core.vm.VM;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SchedulerTest {
+
+    @Test
+    public void testScriptsShareCarriers() throws Exception {
+        AtomicInteger threads = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            threads.incrementAndGet();
+            return Executors.defaultThreadFactory().newThread(runnable);
+        };
+        try (Scheduler scheduler = new Scheduler(2, 100, factory)) {
+            List<CompletableFuture<VM>> endless = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+                endless.add(scheduler.submit(parse("var i = 0; while (true) { i = i + 1; }")));
+            List<CompletableFuture<VM>> scripts = new ArrayList<>();
+            for (int i = 0; i < 1000; i++)
+                scripts.add(scheduler.submit(parse("""
+                                                   fn sum(n) { var s = 0; for (var i = 1; i <= n; i = i + 1) { s = s + i; } return s; }
+                                                   var r = sum(%d);
+                                                   """.formatted(i))));
+            // the endless scripts are suspended between slices, so the others still get to finish
+            for (int i = 0; i < scripts.size(); i++)
+                assertEquals(i * (i + 1) / 2d, scripts.get(i).get(10, TimeUnit.SECONDS).getGlobal("r"));
+            endless.forEach(e -> assertFalse(e.isDone()));
+            // a thousand scripts ran on the two carriers only
+            assertEquals(2, threads.get());
+            endless.forEach(e -> e.cancel(false));
+            assertEquals(1d, scheduler.submit(parse("var r = 1;")).get(10, TimeUnit.SECONDS).getGlobal("r"));
+            assertThrows(Exception.class, () -> scheduler.submit(parse("var r = 1 - true;")).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testErrorFailsItsScriptOnly() throws Exception {
+        try (Scheduler scheduler = new Scheduler(1)) {
+            // compiling a sum nested this deep overflows the carrier's stack
+            String deep = "var r = 1" + " + 1".repeat(200_000) + ";";
+            ExecutionException e = assertThrows(ExecutionException.class,
+                                                 () -> scheduler.submit(parse(deep)).get(10, TimeUnit.SECONDS));
+            assertInstanceOf(StackOverflowError.class, e.getCause());
+            assertEquals(1d, scheduler.submit(parse("var r = 1;")).get(10, TimeUnit.SECONDS).getGlobal("r"));
+        }
+    }
+
+    @Test
+    public void testCloseFailsPendingScripts() throws Exception {
+        Scheduler scheduler = new Scheduler(1, 100, Executors.defaultThreadFactory());
+        List<CompletableFuture<VM>> scripts = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            scripts.add(scheduler.submit(parse("var i = 0; while (true) { i = i + 1; }")));
+        scheduler.close();
+        for (CompletableFuture<VM> script : scripts)
+            assertThrows(ExecutionException.class, () -> script.get(10, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> scheduler.submit(parse("var r = 1;")).get(10, TimeUnit.SECONDS));
+    }
+
+    private static List<Stmt> parse(String code) {
+        return Parser.parse(Scanner.stream(code));
+    }
+}
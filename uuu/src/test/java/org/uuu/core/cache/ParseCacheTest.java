@@ -0,0 +1,107 @@
+package org.uuu.core.cache;
+
+import org.junit.jupiter.api.Test;
+import org.uuu.core.analyser.ScopeResolver;
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.interpreter.Interpreter;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.scanner.Scanner;
+import org.uuu.core.scanner.Token;
+import org.uuu.core.util.AstPrinter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParseCacheTest {
+
+    private static final String PROGRAM = """
+            class A { fn init(x) { self.x = x; } fn get() { return self.x; } }
+            class B < A { fn get() { return super.get() * 2; } }
+            fn counter() { var n = 0; fn inc() { n = n + 1; return n; } return inc; }
+            var c = counter(); c(); c();
+            var s = "caf\\u00e9";
+            var r = 0;
+            for (var i = 0; i < 10; i = i + 1) { if (i == 8) break; if (i < 2) continue; r = r + i; }
+            r = r + B(1.5).get() + c() + (s == "caf\\u00e9" ? 100 : -1) + (true & !false ? 0 : 1);
+            """;
+
+    @Test
+    public void testRoundTrip() {
+        List<Stmt> statements = Parser.parse(Scanner.stream(PROGRAM));
+        ScopeResolver.resolve(statements);
+        List<Stmt> read = AstReader.read(AstWriter.write(statements));
+        assertEquals(statements.size(), read.size());
+        for (int i = 0; i < statements.size(); i++)
+            assertEquals(AstPrinter.print(statements.get(i)), AstPrinter.print(read.get(i)));
+        // slots come back from the cache, running it without the resolver gives the same result
+        assertEquals(run(statements), Interpreter.resolved(read, false).interpret().getGlobals().get(Token.ofIdent("r", 0, 0)));
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        Path source = directory.resolve("script.uuu");
+        try {
+            ParseCache cache = new ParseCache(directory);
+            Files.writeString(source, PROGRAM);
+            Object expected = run(Parser.parse(Scanner.stream(PROGRAM)));
+            Object cold = Interpreter.resolved(cache.load(source), false).interpret().getGlobals().get(Token.ofIdent("r", 0, 0));
+            Path entry = directory.resolve(ParseCache.key(Files.readAllBytes(source)) + ".ast");
+            assertTrue(Files.exists(entry));
+            assertEquals(expected, cold);
+
+            // a hit is read from the entry, the source is not parsed again
+            byte[] bytes = Files.readAllBytes(entry);
+            List<Stmt> other = Parser.parse(Scanner.stream("var r = 42;"));
+            ScopeResolver.resolve(other);
+            byte[] tree = AstWriter.write(other);
+            byte[] replaced = new byte[6 + tree.length];
+            System.arraycopy(bytes, 0, replaced, 0, 6);
+            System.arraycopy(tree, 0, replaced, 6, tree.length);
+            Files.write(entry, replaced);
+            assertEquals(42d, Interpreter.resolved(cache.load(source), false).interpret().getGlobals().get(Token.ofIdent("r", 0, 0)));
+
+            // a damaged entry is parsed again and replaced
+            Files.write(entry, new byte[]{'U', 'U', 'U', 'C', 0, 1, 99});
+            assertEquals(expected, Interpreter.resolved(cache.load(source), false).interpret().getGlobals().get(Token.ofIdent("r", 0, 0)));
+            assertEquals(expected, Interpreter.resolved(cache.load(source), false).interpret().getGlobals().get(Token.ofIdent("r", 0, 0)));
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(e -> e.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testFailedWriteLeavesNoTemporaryFile() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        Path source = directory.resolve("script.uuu");
+        try {
+            Files.writeString(source, PROGRAM);
+            // a directory in the entry's place makes the move fail
+            Path entry = directory.resolve(ParseCache.key(Files.readAllBytes(source)) + ".ast");
+            Files.createDirectories(entry.resolve("taken"));
+            List<Stmt> loaded = new ParseCache(directory).load(source);
+            assertEquals(run(Parser.parse(Scanner.stream(PROGRAM))),
+                         Interpreter.resolved(loaded, false).interpret().getGlobals().get(Token.ofIdent("r", 0, 0)));
+            try (Stream<Path> files = Files.list(directory)) {
+                assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(e -> e.toFile().delete());
+            }
+        }
+    }
+
+    private static Object run(List<Stmt> statements) {
+        return new Interpreter(statements).interpret().getGlobals().get(Token.ofIdent("r", 0, 0));
+    }
+}
@@ -2,13 +2,32 @@ package org.uuu.core.interpreter;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.uuu.core.ast.expression.Binary;
+import org.uuu.core.ast.expression.Expr;
+import org.uuu.core.ast.expression.Get;
+import org.uuu.core.ast.statement.Block;
+import org.uuu.core.ast.statement.ExprStmt;
+import org.uuu.core.ast.statement.Fn;
+import org.uuu.core.ast.statement.For;
+import org.uuu.core.ast.statement.Return;
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.ast.statement.Var;
+import org.uuu.core.optimizer.Optimizer;
 import org.uuu.core.parser.Parser;
 import org.uuu.core.runtime.Environment;
+import org.uuu.core.runtime.PropertyCache;
+import org.uuu.core.runtime.Specialization;
 import org.uuu.core.scanner.Scanner;
 import org.uuu.core.scanner.Token;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class InterpreterTest {
 
@@ -217,6 +236,219 @@ class InterpreterTest {
         assertEquals(3d, env.get(Token.ofIdent("x", 1, 1)));
     }
 
+    @Test
+    public void testFlatClosures() {
+        Environment env = run("""
+                              fn outer(n) {
+                                var unused = "large";
+                                var count = 0;
+                                var fixed = n * 2;
+                                fn inc() { count = count + 1; return count; }
+                                fn nested() { fn deep() { return fixed + count; } return deep; }
+                                fn fact(k) { if (k < 2) return 1; return k * fact(k - 1); }
+                                class Node {
+                                  fn init(v) { self.v = v; }
+                                  fn next() { fn make() { return Node(self.v + 1); } return make(); }
+                                }
+                                inc();
+                                count = count + 10;
+                                inc();
+                                fixed = fixed;
+                                var deep = nested();
+                                return deep() + fact(4) * 100 + Node(1).next().next().v * 1000;
+                              }
+                              fn only(n) { var unused = "large"; var kept = n; fn get() { return kept; } return get; }
+                              class A { fn name() { return "A"; } }
+                              class B < A {
+                                fn name() { fn inner() { return super.name() + "B" + self.tag; } return inner(); }
+                              }
+                              var b = B();
+                              b.tag = "!";
+                              var x = outer(5);
+                              var f = only(7);
+                              var y = f();
+                              var s = b.name();
+                              """);
+        assertEquals(5422d, env.get(Token.ofIdent("x", 1, 1)));
+        assertEquals(7d, env.get(Token.ofIdent("y", 1, 1)));
+        assertEquals("AB!", env.get(Token.ofIdent("s", 1, 1)));
+        // only what the body uses is kept, a value that is never reassigned is kept as it is
+        Function f = (Function) env.get(Token.ofIdent("f", 1, 1));
+        assertEquals(List.of(7d), Arrays.asList(f.getCaptures()));
+    }
+
+    @Test
+    public void testReusedEnvironments() {
+        List<Stmt> statements = Parser.parse(Scanner.stream("""
+                                                             class Link { fn init(f, next) { self.f = f; self.next = next; } }
+                                                             var head = null;
+                                                             var r = 0;
+                                                             for (var i = 0; i < 5; i = i + 1) {
+                                                               r = r + i;
+                                                               {
+                                                                 var j = i * 10;
+                                                                 fn get() { return j; }
+                                                                 head = Link(get, head);
+                                                               }
+                                                             }
+                                                             fn sum(link) { if (link == null) return 0; return link.f() + sum(link.next); }
+                                                             var s = sum(head);
+                                                             """));
+        Interpreter interpreter = new Interpreter(statements);
+        Environment env = interpreter.interpret().env;
+        // the loop body declares nothing and runs in the loop's environment
+        assertFalse(((Block) ((For) statements.get(3)).getBody()).isScoped());
+        assertEquals(10d, env.get(Token.ofIdent("r", 1, 1)));
+        // every closure kept its own value although the environments they were made in are reused
+        assertEquals(100d, env.get(Token.ofIdent("s", 1, 1)));
+        assertThrows(RuntimeException.class, () -> run("fn f(n) { var v = n; return v + missing; } var a = f(1);"));
+    }
+
+    @Test
+    public void testUnboxedNumbers() {
+        Environment env = run("""
+                              class P { fn init(x) { self.x = x; self.s = "p"; } }
+                              var p = P(1);
+                              var t = 0;
+                              var u = 0;
+                              fn f(n) {
+                                var a = 0;
+                                for (var i = 0; i < n; i = i + 1) { a = a + i; p.x = p.x + 1; }
+                                fn get() { return a; }
+                                a = a + 1;
+                                return get;
+                              }
+                              var g = f(4);
+                              t = g() + p.x;
+                              u = t;
+                              u = u + "s";
+                              var w = p.s + "!";
+                              """);
+        assertEquals(12d, env.get(Token.ofIdent("t", 1, 1)));
+        // a number is boxed when it is read as a value, so it is still a Double there
+        assertEquals(Double.class, env.get(Token.ofIdent("t", 1, 1)).getClass());
+        assertNull(env.get(Token.ofIdent("u", 1, 1)));
+        assertEquals("p!", env.get(Token.ofIdent("w", 1, 1)));
+        Instance p = (Instance) env.get(Token.ofIdent("p", 1, 1));
+        assertEquals(5d, p.get(Token.ofIdent("x", 1, 1)));
+
+        // a method in arithmetic fails without evaluating its receiver again
+        Interpreter interpreter = new Interpreter(Parser.parse(Scanner.scan("""
+                                                                           class Q { fn m() { return 1; } }
+                                                                           var made = 0;
+                                                                           fn make() { made = made + 1; return Q(); }
+                                                                           var v = make().m - 1;
+                                                                           """)));
+        assertThrows(RuntimeException.class, interpreter::interpret);
+        assertEquals(1d, interpreter.env.get(Token.ofIdent("made", 1, 1)));
+    }
+
+    @Test
+    public void testCallArities() {
+        Environment env = run("""
+                              fn f0() { return 1; }
+                              fn f1(a) { return a; }
+                              fn f2(a, b) { return a - b; }
+                              fn f3(a, b, c) { return a - b - c; }
+                              fn f4(a, b, c, d) { return a - b - c - d; }
+                              class V {
+                                fn init(a, b, c) { self.s = a + b + c; }
+                                fn m2(a, b) { return self.s - a - b; }
+                                fn m4(a, b, c, d) { return self.s - a - b - c - d; }
+                              }
+                              var v = V(10, 20, 30);
+                              var m = v.m2;
+                              var r = f0() + f1(2) + f2(10, 3) + f3(100, 10, 1) + f4(1000, 100, 10, 1);
+                              var s = v.m2(1, 2) + m(3, 4) + v.m4(1, 1, 1, 1);
+                              """);
+        assertEquals(1 + 2 + 7 + 89 + 889d, env.get(Token.ofIdent("r", 1, 1)));
+        assertEquals(57 + 53 + 56d, env.get(Token.ofIdent("s", 1, 1)));
+        assertThrows(RuntimeException.class, () -> run("fn f(a, b) { return a; } var x = f(1);"));
+        assertThrows(RuntimeException.class, () -> run("class A { fn m(a) { return a; } } var x = A().m(1, 2);"));
+    }
+
+    @Test
+    public void testSafepoints() {
+        Interpreter interpreter = new Interpreter(Parser.parse(Scanner.stream("""
+                                                                             fn down(n) { if (n > 0) down(n - 1); return n; }
+                                                                             var i = 0;
+                                                                             while (i < 10) { i = i + 1; }
+                                                                             down(10);
+                                                                             """)));
+        int[] reached = {0};
+        interpreter.setSafepoint(e -> reached[0]++, 1);
+        interpreter.interpret();
+        // ten loop back-edges and eleven calls
+        assertEquals(21, reached[0]);
+        Interpreter endless = new Interpreter(Parser.parse(Scanner.stream("while (true) {}")));
+        endless.setSafepoint(e -> {
+            throw new RuntimeException("Out of fuel.");
+        }, 1000);
+        assertThrows(RuntimeException.class, endless::interpret);
+    }
+
+    @Test
+    public void testNestedForRedeclaresItsVariable() {
+        Environment env = run("""
+                              fn count() {
+                                var c = 0;
+                                for (var i = 0; i < 3; i = i + 1)
+                                  for (var j = 0; j < 3; j = j + 1) c = c + 1;
+                                return c;
+                              }
+                              var r = count();
+                              """);
+        // the inner initializer runs once per outer iteration and must reuse the slot the loop reads
+        assertEquals(9d, env.get(Token.ofIdent("r", 1, 1)));
+    }
+
+    @Test
+    public void testSumTypeFeedback() {
+        Environment env = run("""
+                              fn add(a, b) { var t = a + b; return t; }
+                              var x = add(1, 2);
+                              var y = add("a", "b");
+                              var z = add(1, "b");
+                              var w = add(2, 3);
+                              fn calls() { return 1; }
+                              var n = 0;
+                              fn count() { var c = 0; c = c + calls(); c = c + calls(); return c; }
+                              for (var i = 0; i < 3; i = i + 1) n = n + count();
+                              """);
+        // a sum that saw numbers first still adds strings, mixes and numbers again once its guard failed
+        assertEquals(3d, env.get(Token.ofIdent("x", 1, 1)));
+        assertEquals("ab", env.get(Token.ofIdent("y", 1, 1)));
+        assertNull(env.get(Token.ofIdent("z", 1, 1)));
+        assertEquals(5d, env.get(Token.ofIdent("w", 1, 1)));
+        // every operand of a specialised sum is evaluated once
+        assertEquals(6d, env.get(Token.ofIdent("n", 1, 1)));
+
+        String add = "fn add(a, b) { var t = a + b; return t; }\n";
+        assertEquals(Specialization.DOUBLE, sumOf(add + "var x = add(1, 2); var y = add(3, 4);"));
+        assertEquals(Specialization.GENERIC, sumOf(add + "var x = add(1, 2); var y = add(3, 4); var z = add(1, \"b\");"));
+        assertEquals(Specialization.STRING, sumOf(add + "var x = add(\"a\", \"b\"); var y = add(\"c\", \"d\");"));
+    }
+
+    @Test
+    public void testRuntimeStateOutsideEquality() {
+        Environment env = run("""
+                              fn make() { fn k() { return 1; } return k; }
+                              var a = make();
+                              var same = a == make();
+                              var itself = a == a;
+                              """);
+        // closures are compared by identity, not by their declaration and captures
+        assertEquals(false, env.get(Token.ofIdent("same", 1, 1)));
+        assertEquals(true, env.get(Token.ofIdent("itself", 1, 1)));
+        Get get = (Get) ((ExprStmt) Parser.parse(Scanner.stream("p.x;")).get(0)).getExpression();
+        // an inline cache filled in at run time changes neither the hash nor the printed node
+        int hash = get.hashCode();
+        String text = get.toString();
+        get.setCache(new PropertyCache());
+        assertEquals(hash, get.hashCode());
+        assertEquals(text, get.toString());
+    }
+
     @Test
     public void testRecursiveFibonacci() {
         String code = """
@@ -367,7 +599,300 @@ class InterpreterTest {
         assertEquals(42d, env.get(Token.ofIdent("xx", 1, 1)));
     }
 
+    @Test
+    public void testSuperBindsSelf() {
+        String code = """
+                      class A {
+                        fn name() {
+                          return self.n;
+                        }
+                      }
+                      class B < A {
+                        fn init() {
+                          self.n = 7;
+                        }
+                        fn name() {
+                          return super.name() + 1;
+                        }
+                      }
+                      var x = B().name();
+                      """;
+        Environment env = run(code);
+        assertEquals(8d, env.get(Token.ofIdent("x", 1, 1)));
+    }
+
+    @Test
+    public void testShadowedLocals() {
+        String code = """
+                      var x;
+                      fn test(a) {
+                        var b = a * 2;
+                        {
+                          var a = b + 1;
+                          {
+                            var b = a + 1;
+                            x = a + b;
+                          }
+                        }
+                      }
+                      test(1);
+                      """;
+        Environment env = run(code);
+        assertEquals(7d, env.get(Token.ofIdent("x", 1, 1)));
+    }
+
+    @Test
+    public void testNativeFunctionLookup() {
+        Environment env = run("var x = clock;");
+        assertEquals("<native fn: clock>", env.get(Token.ofIdent("x", 1, 1)).toString());
+    }
+
+    @Test
+    public void testEmptyReturn() {
+        String code = """
+                      var x = 0;
+                      fn test() {
+                        x = 1;
+                        return;
+                        x = 2;
+                      }
+                      test();
+                      """;
+        Environment env = run(code);
+        assertEquals(1d, env.get(Token.ofIdent("x", 1, 1)));
+    }
+
+    @Test
+    public void testReturnFromLoop() {
+        String code = """
+                      fn find() {
+                        for(var i = 0; i < 10; i = i + 1) {
+                          while(true) {
+                            if(i == 3) return i;
+                            break;
+                          }
+                        }
+                        return -1;
+                      }
+                      var x = find();
+                      """;
+        Environment env = run(code);
+        assertEquals(3d, env.get(Token.ofIdent("x", 1, 1)));
+    }
+
+    @Test
+    public void testBreakOutsideLoop() {
+        assertThrows(RuntimeException.class, () -> run("break;"));
+        assertThrows(RuntimeException.class, () -> run("fn f() { continue; } f();"));
+    }
+
+    @Test
+    public void testFieldInsertionOrder() {
+        String code = """
+                      class P {}
+                      fn sum(p) {
+                        return p.x + p.y;
+                      }
+                      var a = P();
+                      a.x = 1;
+                      a.y = 2;
+                      var b = P();
+                      b.y = 30;
+                      b.x = 40;
+                      var x = sum(a) + sum(b);
+                      b.x = 100;
+                      var xx = sum(a) + sum(b);
+                      """;
+        Environment env = run(code);
+        assertEquals(73d, env.get(Token.ofIdent("x", 1, 1)));
+        assertEquals(133d, env.get(Token.ofIdent("xx", 1, 1)));
+    }
+
+    @Test
+    public void testPolymorphicPropertyAccess() {
+        String code = """
+                      class A { fn init() { self.v = 1; } fn get() { return self.v; } }
+                      class B { fn init() { self.w = 0; self.v = 10; } fn get() { return self.v * 2; } }
+                      class C < A { fn get() { return 100; } }
+                      class D { fn init() { self.get = A().get; } }
+                      var x = 0;
+                      for(var i = 0; i < 3; i = i + 1) {
+                        x = x + A().get() + B().get() + C().get() + D().get();
+                      }
+                      """;
+        Environment env = run(code);
+        assertEquals(366d, env.get(Token.ofIdent("x", 1, 1)));
+    }
+
+    @Test
+    public void testUndefinedProperty() {
+        assertThrows(RuntimeException.class, () -> run("class A {} var a = A(); var x = a.missing;"));
+    }
+
+    @Test
+    public void testInheritedMethodCalls() {
+        String code = """
+                      class A { fn init(v) { self.v = v; } fn get() { return self.v; } fn twice() { return self.get() * 2; } }
+                      class B < A { fn get() { return super.get() + 1; } }
+                      class C < B { fn init() { super.init(5); } }
+                      var x = C().twice();
+                      var m = C().get;
+                      var y = m();
+                      """;
+        Environment env = run(code);
+        assertEquals(12d, env.get(Token.ofIdent("x", 1, 1)));
+        assertEquals(6d, env.get(Token.ofIdent("y", 1, 1)));
+    }
+
+    @Test
+    public void testMethodCallArity() {
+        assertThrows(RuntimeException.class, () -> run("class A { fn f(a) {} } A().f();"));
+        assertThrows(RuntimeException.class, () -> run("class A { fn init() { self.f = 1; } } A().f();"));
+    }
+
+    @Test
+    public void testArithmeticChains() {
+        String code = """
+                      var a = 3;
+                      var x = a * 2 - a / 3 + (a * a) * 0.5 - -a;
+                      var y = (1 + 2) * 3 + a;
+                      var s = "a" + "b";
+                      var n = 1 + s;
+                      var c = !(a * 2 > 5) ? 1 : 2;
+                      """;
+        Environment env = run(code);
+        assertEquals(12.5d, env.get(Token.ofIdent("x", 1, 1)));
+        assertEquals(12d, env.get(Token.ofIdent("y", 1, 1)));
+        assertEquals("ab", env.get(Token.ofIdent("s", 1, 1)));
+        assertNull(env.get(Token.ofIdent("n", 1, 1)));
+        assertEquals(2d, env.get(Token.ofIdent("c", 1, 1)));
+    }
+
+    @Test
+    public void testArithmeticOnNonNumber() {
+        assertThrows(RuntimeException.class, () -> run("var x = \"a\" * 2;"));
+        assertThrows(RuntimeException.class, () -> run("var x = 2 - (1 + \"a\");"));
+    }
+
+    @Test
+    public void testPlusDespecializes() {
+        String code = """
+                      fn add(a, b) { return a + b; }
+                      var x = add(1, 2);
+                      var s = add("a", "b");
+                      var n = add(1, "b");
+                      var y = add(3, 4);
+                      """;
+        Environment env = run(code);
+        assertEquals(3d, env.get(Token.ofIdent("x", 1, 1)));
+        assertEquals("ab", env.get(Token.ofIdent("s", 1, 1)));
+        assertNull(env.get(Token.ofIdent("n", 1, 1)));
+        assertEquals(7d, env.get(Token.ofIdent("y", 1, 1)));
+
+        String add = "fn add(a, b) { return a + b; }\n";
+        assertEquals(Specialization.DOUBLE, sumOf(add + "var x = add(1, 2); var y = add(3, 4);"));
+        assertEquals(Specialization.GENERIC, sumOf(add + "var x = add(1, 2); var n = add(1, \"b\"); var y = add(3, 4);"));
+        assertEquals(Specialization.STRING, sumOf(add + "var s = add(\"a\", \"b\");"));
+    }
+
+    @Test
+    public void testCallSiteChangingTarget() {
+        String code = """
+                      fn one(a) { return a; }
+                      fn two(a) { return a * 2; }
+                      fn three(a) { return a * 3; }
+                      var x = 0;
+                      for(var i = 0; i < 3; i = i + 1) {
+                        var f = i == 0 ? one : i == 1 ? two : three;
+                        x = x + f(1);
+                      }
+                      """;
+        Environment env = run(code);
+        assertEquals(6d, env.get(Token.ofIdent("x", 1, 1)));
+        assertThrows(RuntimeException.class, () -> run("""
+                                                        fn one(a) { return a; }
+                                                        fn none() {}
+                                                        for(var i = 0; i < 2; i = i + 1) {
+                                                          var f = i == 0 ? one : none;
+                                                          f(1);
+                                                        }
+                                                        """));
+    }
+
+    @Test
+    public void testLazyFunctionBodies() {
+        String code = """
+                      var a = "global";
+                      fn outer(n) {
+                        var local = 10;
+                        fn inner(m) { return m + local + n; }
+                        return inner;
+                      }
+                      fn fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+                      fn shadow() { return a; }
+                      var seen;
+                      {
+                        fn early() { return a; }
+                        var a = "block";
+                        fn late() { return a; }
+                        var e = early();
+                        var l = late();
+                        seen = e + " " + l;
+                      }
+                      class A { fn init(x) { self.x = x; } fn get() { return self.x; } }
+                      class B < A { fn get() { return super.get() + 1; } }
+                      fn broken() { return (; }
+                      var r = outer(1)(2) + fib(10) + B(5).get();
+                      var s = shadow();
+                      """;
+        List<Stmt> statements = new Parser(Scanner.stream(code), true).run();
+        assertFalse(((Fn) statements.get(1)).isParsed());
+        Environment env = new Interpreter(statements).interpret().env;
+        assertEquals(74d, env.get(Token.ofIdent("r", 1, 1)));
+        assertEquals("global", env.get(Token.ofIdent("s", 1, 1)));
+        assertEquals("global block", env.get(Token.ofIdent("seen", 1, 1)));
+        assertTrue(((Fn) statements.get(1)).isParsed());
+        // a body that is never called is never parsed, its syntax error shows up on the first call
+        assertFalse(((Fn) statements.get(8)).isParsed());
+        assertThrows(RuntimeException.class, () -> ((Fn) statements.get(8)).getBody());
+    }
+
+    @Test
+    public void testTailCalls() {
+        Environment env = run("""
+                              fn count(n, acc) { if (n == 0) return acc; return count(n - 1, acc + 1); }
+                              fn even(n) { if (n == 0) return true; return odd(n - 1); }
+                              fn odd(n) { if (n == 0) return false; return even(n - 1); }
+                              fn isEven(n) { while (true) { return even(n); } }
+                              class Loop {
+                                fn init(n) { self.n = n; }
+                                fn run(n) { if (n == 0) return self.n; return self.run(n - 1); }
+                                fn make() { return Loop(7); }
+                              }
+                              class Sub < Loop { fn run(n) { return super.run(n); } }
+                              var run = Loop(3).run;
+                              fn bound(n) { return run(n); }
+                              var a = count(200000, 0);
+                              var b = isEven(100001);
+                              var c = Sub(5).run(100000) + bound(100000) + Loop(1).make().n;
+                              var d = count(3, 0) + count(2, 0);
+                              """);
+        assertEquals(200000d, env.get(Token.ofIdent("a", 1, 1)));
+        assertEquals(false, env.get(Token.ofIdent("b", 1, 1)));
+        assertEquals(15d, env.get(Token.ofIdent("c", 1, 1)));
+        assertEquals(5d, env.get(Token.ofIdent("d", 1, 1)));
+        assertThrows(RuntimeException.class, () -> run("fn f(n) { return g(n); } var a = f(1);"));
+    }
+
     private static Environment run(String code) {
         return new Interpreter(Parser.parse(Scanner.scan(code))).interpret().env;
     }
+
+    // the state of the sum in the first statement of add, the function is not inlined so its own node is the one run
+    private static Specialization sumOf(String code) {
+        Environment env = new Interpreter(Parser.parse(Scanner.scan(code)), false, new Optimizer(0, null)).interpret().env;
+        Stmt first = ((Function) env.get(Token.ofIdent("add", 1, 1))).getDeclaration().getBody().get(0);
+        Expr sum = first instanceof Var var ? var.getInitializer() : ((Return) first).getValue();
+        return ((Binary) sum).getSpecialization();
+    }
 }
\ No newline at end of file
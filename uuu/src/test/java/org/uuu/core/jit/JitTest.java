@@ -0,0 +1,154 @@
+package org.uuu.core.jit;
+
+import org.junit.jupiter.api.Test;
+import org.uuu.core.interpreter.Function;
+import org.uuu.core.interpreter.Interpreter;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.runtime.Environment;
+import org.uuu.core.scanner.Scanner;
+import org.uuu.core.scanner.Token;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JitTest {
+
+    @Test
+    public void testRecursiveFunction() {
+        Environment env = run("""
+                              fn fib(n) {
+                                if(n <= 1) return n;
+                                return fib(n - 1) + fib(n - 2);
+                              }
+                              var x = fib(20);
+                              """);
+        assertEquals(6765d, env.get(Token.ofIdent("x", 1, 1)));
+        assertNotNull(compile(env, "fib"));
+    }
+
+    @Test
+    public void testTailRecursion() {
+        CompiledFunction compiled = compile(run("""
+                                                fn count(n, acc) {
+                                                  if(n == 0) return acc;
+                                                  return count(n - 1, acc + n);
+                                                }
+                                                """), "count");
+        assertEquals(50005000d, compiled.call(new Object[]{10000d, 0d}));
+        assertEquals(500000500000d, compiled.call(new Object[]{1000000d, 0d}));
+    }
+
+    @Test
+    public void testLoops() {
+        Environment env = run("""
+                              fn sum(n) {
+                                var s = 0;
+                                for(var i = 0; i < n; i = i + 1) {
+                                  if(i == 3) continue;
+                                  if(i > 10 & !(i < 100)) break;
+                                  s = s + i;
+                                }
+                                var j = 0;
+                                while(true) {
+                                  j = j + 1;
+                                  if(j >= 5 | j < 0) break;
+                                }
+                                return j > 4 ? s + j : -1;
+                              }
+                              var x = 0;
+                              for(var i = 0; i < 600; i = i + 1) x = sum(i);
+                              """);
+        assertEquals(4952d, env.get(Token.ofIdent("x", 1, 1)));
+        CompiledFunction compiled = compile(env, "sum");
+        assertNotNull(compiled);
+        assertEquals(4952d, compiled.call(new Object[]{599d}));
+    }
+
+    @Test
+    public void testSameResultBeforeAndAfterCompilation() {
+        Environment env = run("""
+                              fn count(n) {
+                                var c = 0;
+                                for (var i = 0; i < n; i = i + 1)
+                                  for (var j = 0; j < n; j = j + 1) c = c + 1;
+                                return c;
+                              }
+                              var before = count(30);
+                              for (var k = 0; k < %d; k = k + 1) count(1);
+                              var after = count(30);
+                              """.formatted(Jit.THRESHOLD));
+        // the last call ran the compiled code
+        assertNotNull(((Function) env.get(Token.ofIdent("count", 1, 1))).getCompiled());
+        assertEquals(900d, env.get(Token.ofIdent("before", 1, 1)));
+        assertEquals(env.get(Token.ofIdent("before", 1, 1)), env.get(Token.ofIdent("after", 1, 1)));
+    }
+
+    @Test
+    public void testNaNComparisons() {
+        CompiledFunction compiled = compile(run("""
+                                                fn f(a) {
+                                                  var r = 0;
+                                                  if(a < 1) r = r + 1;
+                                                  if(a <= 1) r = r + 2;
+                                                  if(a > 1) r = r + 4;
+                                                  if(a >= 1) r = r + 8;
+                                                  if(a == a) r = r + 16;
+                                                  if(!(a < 1)) r = r + 32;
+                                                  return r;
+                                                }
+                                                """), "f");
+        assertEquals(48d, compiled.call(new Object[]{Double.NaN}));
+        assertEquals(58d, compiled.call(new Object[]{1d}));
+        assertEquals(16d + 32 + 4 + 8, compiled.call(new Object[]{2d}));
+    }
+
+    @Test
+    public void testUnsupportedFunctions() {
+        Environment env = run("""
+                              fn noReturn(a) { a = a + 1; }
+                              fn prints(a) { print(a); return a; }
+                              fn strings(a) { return a + "s"; }
+                              fn global(a) { return a + g; }
+                              var g = 1;
+                              """);
+        assertNull(compile(env, "noReturn"));
+        assertNull(compile(env, "prints"));
+        assertNull(compile(env, "strings"));
+        assertNull(compile(env, "global"));
+    }
+
+    @Test
+    public void testFallsBackForOtherArguments() {
+        Environment env = run("""
+                              fn add(a, b) { return a + b; }
+                              var x = 0;
+                              for(var i = 0; i < 600; i = i + 1) x = add(x, 1);
+                              var s = add("a", "b");
+                              """);
+        assertEquals(600d, env.get(Token.ofIdent("x", 1, 1)));
+        assertEquals("ab", env.get(Token.ofIdent("s", 1, 1)));
+    }
+
+    @Test
+    public void testRebindingRecursiveFunction() {
+        Environment env = run("""
+                              fn count(n) { return n <= 0 ? 0 : 1 + count(n - 1); }
+                              var x = 0;
+                              for(var i = 0; i < 600; i = i + 1) x = count(3);
+                              var f = count;
+                              fn other(n) { return 100; }
+                              count = other;
+                              var y = f(3);
+                              """);
+        assertEquals(3d, env.get(Token.ofIdent("x", 1, 1)));
+        assertEquals(101d, env.get(Token.ofIdent("y", 1, 1)));
+    }
+
+    private static Environment run(String code) {
+        Interpreter interpreter = new Interpreter(Parser.parse(Scanner.scan(code)), true).interpret();
+        return interpreter.getGlobals();
+    }
+
+    private static CompiledFunction compile(Environment env, String name) {
+        return Jit.compile((Function) env.get(Token.ofIdent(name, 1, 1)));
+    }
+}
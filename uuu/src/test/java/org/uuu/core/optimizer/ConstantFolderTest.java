@@ -0,0 +1,96 @@
+package org.uuu.core.optimizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.ArgumentsProvider;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+import org.uuu.core.analyser.ScopeResolver;
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.interpreter.Interpreter;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.scanner.Scanner;
+import org.uuu.core.scanner.Token;
+import org.uuu.core.util.AstPrinter;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConstantFolderTest {
+
+    private static final TestCase[] TEST_CASES = new TestCase[]{
+            new TestCase("2 + 2 * 2;", "(+ 2.0 (* 2.0 2.0));", "6.0;"),
+            new TestCase("\"prefix\" + \"suffix\";", "(+ prefix suffix);", "prefixsuffix;"),
+            new TestCase("-(2);", "(- (group 2.0));", "-2.0;"),
+            new TestCase("(1 + 2) * b;", "(* (group (+ 1.0 2.0)) b);", "(* 3.0 b);"),
+            new TestCase("1 == 1;", "(== 1.0 1.0);", "true;"),
+            new TestCase("!(1 < 2) | x;", "(| (! (group (< 1.0 2.0))) x);", "x;"),
+            new TestCase("x & !false & y;", "(& (& x (! false)) y);", "(& (& x true) y);"),
+            new TestCase("2 > 1 ? a : b;", "((> 2.0 1.0) ? a : b);", "a;"),
+            new TestCase("(b - 1) * 1 / 1 - 0;", "(- (/ (* (group (- b 1.0)) 1.0) 1.0) 0.0);", "(- b 1.0);"),
+            new TestCase("-(-(b * 2));", "(- (group (- (group (* b 2.0)))));", "(* b 2.0);"),
+            new TestCase("!!(a == b);", "(! (! (group (== a b))));", "(== a b);"),
+            // folding stops where the interpreter would fail or give nil
+            new TestCase("1 + \"a\";", "(+ 1.0 a);", "(+ 1.0 a);"),
+            new TestCase("x + 0;", "(+ x 0.0);", "(+ x 0.0);"),
+            new TestCase("x * 1;", "(* x 1.0);", "(* x 1.0);"),
+            new TestCase("-\"a\";", "(- a);", "(- a);"),
+            new TestCase("if (1 < 2) { var x = 1; } else { var y = 2; }", "if((< 1.0 2.0)) { var x = 1.0; }else { var y = 2.0; }", "{ var x = 1.0; }"),
+            new TestCase("if (false) { var x = 1; } var y = 1;", "if(false) { var x = 1.0; }var y = 1.0;", "var y = 1.0;"),
+            new TestCase("if (false) { var x = 1; } else y = 1;", "if(false) { var x = 1.0; }else y = 1.0;", "y = 1.0;"),
+            new TestCase("while (1 > 2) { x = 1; } var y = 1;", "while((> 1.0 2.0)) { x = 1.0;\n }var y = 1.0;", "var y = 1.0;"),
+            new TestCase("{ var x = 1; return x; x = 2; }", "{ var x = 1.0; return x; x = 2.0;\n }", "{ var x = 1.0; return x; }"),
+            new TestCase("{ if (true) return 1; return 2; }", "{ if(true) return 1.0; return 2.0; }", "{ return 1.0; }"),
+    };
+
+    @ParameterizedTest(name = "{index}:{0}")
+    @ArgumentsSource(TestCasesSource.class)
+    public void foldTest(String code, String before, String after) {
+        List<Stmt> statements = Parser.parse(Scanner.stream(code));
+        ScopeResolver.resolve(statements);
+        assertEquals(before, print(statements));
+        assertEquals(after, print(ConstantFolder.optimize(statements)));
+    }
+
+    @Test
+    public void testSameResult() {
+        String code = """
+                      fn f(n) {
+                        var r = 0;
+                        for (var i = 0; i < n; i = i + 1) {
+                          if (2 > 3) r = -1;
+                          else r = r + i * (2 * 3 - 5) - 0;
+                          if (i == 10 - 2 * 3) { var skip = "x" + "y"; continue; r = 1000; }
+                        }
+                        return r + (true ? 0.5 : 1);
+                      }
+                      var r = f(10) + --f(3);
+                      """;
+        List<Stmt> statements = Parser.parse(Scanner.stream(code));
+        ScopeResolver.resolve(statements);
+        Object folded = Interpreter.resolved(ConstantFolder.optimize(statements), false).interpret().getGlobals().get(Token.ofIdent("r", 0, 0));
+        assertEquals(new Interpreter(Parser.parse(Scanner.stream(code))).interpret().getGlobals().get(Token.ofIdent("r", 0, 0)), folded);
+        assertEquals(49d, folded);
+    }
+
+    private static String print(List<Stmt> statements) {
+        return statements.stream().map(AstPrinter::print).collect(Collectors.joining()).trim();
+    }
+
+    private static class TestCasesSource implements ArgumentsProvider {
+        @Override
+        public Stream<? extends Arguments> provideArguments(ExtensionContext extensionContext) {
+            return Stream.of(TEST_CASES).map(TestCase::toArguments);
+        }
+    }
+
+    private record TestCase(String code, String before, String after) {
+        public Arguments toArguments() {
+            return Arguments.of(code, before, after);
+        }
+    }
+}
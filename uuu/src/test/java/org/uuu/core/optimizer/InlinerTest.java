@@ -0,0 +1,91 @@
+package org.uuu.core.optimizer;
+
+import org.junit.jupiter.api.Test;
+import org.uuu.core.analyser.ScopeResolver;
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.interpreter.Interpreter;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.scanner.Scanner;
+import org.uuu.core.scanner.Token;
+import org.uuu.core.util.AstPrinter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InlinerTest {
+
+    @Test
+    public void testInline() {
+        List<String> report = new ArrayList<>();
+        List<Stmt> statements = optimize("""
+                                         fn sq(x) { return x * x; }
+                                         fn avg(a, b) { return (a + b) / 2; }
+                                         var r = sq(3);
+                                         var s = avg(r, 1);
+                                         var t = avg(s, -1) > 10 ? sq(s) : 0;
+                                         """, 16, report);
+        assertEquals("var r = 9.0;", AstPrinter.print(statements.get(2)));
+        assertEquals("var s = (/ (+ r 1.0) 2.0);", AstPrinter.print(statements.get(3)));
+        assertEquals("var t = ((> (/ (+ s -1.0) 2.0) 10.0) ? (* s s) : 0.0);", AstPrinter.print(statements.get(4)));
+        assertEquals(List.of("inlined 'sq' at line 3", "inlined 'avg' at line 4", "inlined 'avg' at line 5",
+                             "inlined 'sq' at line 5"), report);
+    }
+
+    @Test
+    public void testNotInlined() {
+        List<String> report = new ArrayList<>();
+        optimize("""
+                 fn early() { return late(1); }
+                 fn late(x) { return x; }
+                 fn fact(n) { return n < 2 ? 1 : n * fact(n - 1); }
+                 fn swapped(x) { return x; }
+                 swapped = fact;
+                 fn maybe(c, x) { return c & x; }
+                 fn big(x) { return x + x + x + x + x; }
+                 var a = late(fact(3)) + fact(3) + swapped(1) + big(1);
+                 var b = maybe(false, undefined);
+                 { var late = fact; var c = late(2); }
+                 """, 8, report);
+        assertEquals(List.of(), report);
+        assertEquals(List.of("inlined 'big' at line 1"), inlined("fn big(x) { return x + x + x + x + x; } var a = big(1);", 9));
+        // an expression argument is only substituted for a parameter read exactly once on every path
+        assertEquals(List.of("inlined 'inc' at line 1"), inlined("fn inc(x) { return x + 1; } var r = 2; var a = inc(r * 2);", 8));
+        assertEquals(List.of(), inlined("fn sq(x) { return x * x; } var r = 2; var a = sq(r * 2);", 8));
+        assertEquals(List.of(), inlined("fn pick(c, x) { return c ? x : 0; } var r = 2; var a = pick(true, r * 2);", 8));
+    }
+
+    @Test
+    public void testSameBehaviour() {
+        String code = """
+                      fn add(a, b) { return a + b; }
+                      fn first(a, b) { return a; }
+                      class P { fn init(x) { self.x = x; } }
+                      fn getX(p) { return p.x; }
+                      var r = 0;
+                      for (var i = 0; i < 100; i = i + 1) r = add(r, getX(P(i)));
+                      var s = add("a", "b") + first("c", r);
+                      var n = add(1, "b");
+                      """;
+        Interpreter inlined = new Interpreter(Parser.parse(Scanner.stream(code)), false).interpret();
+        Interpreter plain = new Interpreter(Parser.parse(Scanner.stream(code)), false, new Optimizer(0, null)).interpret();
+        for (String name : new String[]{"r", "s", "n"})
+            assertEquals(plain.getGlobals().get(Token.ofIdent(name, 0, 0)), inlined.getGlobals().get(Token.ofIdent(name, 0, 0)));
+        // an undefined global passed to a parameter that is always read still fails
+        assertThrows(RuntimeException.class, () -> new Interpreter(Parser.parse(Scanner.stream("fn id(x) { return x; } var a = id(missing);"))).interpret());
+    }
+
+    private static List<String> inlined(String code, int size) {
+        List<String> report = new ArrayList<>();
+        optimize(code, size, report);
+        return report;
+    }
+
+    private static List<Stmt> optimize(String code, int size, List<String> report) {
+        List<Stmt> statements = Parser.parse(Scanner.stream(code));
+        ScopeResolver.resolve(statements);
+        return new Optimizer(size, report::add).optimize(statements);
+    }
+}
@@ -12,6 +12,7 @@ import org.uuu.core.ast.statement.*;
 import org.uuu.core.scanner.Scanner;
 import org.uuu.core.util.AstPrinter;
 
+import java.io.StringReader;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -40,6 +41,50 @@ class ParserTest {
         assertEquals(expected, AstPrinter.print(parse.get(0)).trim());
     }
 
+    @ParameterizedTest(name = "{index}:{0}")
+    @ArgumentsSource(TestCasesSource.class)
+    public void tokenStreamTest(String code, String expected) {
+        List<Stmt> parse = Parser.parse(Scanner.stream(code));
+        assertEquals(1, parse.size());
+        assertEquals(expected, AstPrinter.print(parse.get(0)).trim());
+    }
+
+    @Test
+    public void testErrorPosition() {
+        RuntimeException list = assertThrows(RuntimeException.class, () -> Parser.parse(Scanner.scan("var a = 1;\nvar = 2;")));
+        RuntimeException stream = assertThrows(RuntimeException.class, () -> Parser.parse(Scanner.stream("var a = 1;\nvar = 2;")));
+        assertEquals("Expected identifier after var. 1|15", list.getMessage());
+        assertEquals(list.getMessage(), stream.getMessage());
+    }
+
+    @Test
+    public void testPulledStatements() {
+        // the second statement is broken, the first one is still handed out before it is scanned
+        Parser parser = new Parser(new Scanner(new StringReader("var a = 1;\nfn f(x) { return x; }\nvar = 2;")).pull());
+        assertEquals("var a = 1.0;", AstPrinter.print(parser.next()));
+        assertInstanceOf(Fn.class, parser.next());
+        RuntimeException error = assertThrows(RuntimeException.class, parser::next);
+        assertEquals("Expected identifier after var. 2|37", error.getMessage());
+    }
+
+    @Test
+    public void testLazyBody() {
+        String code = "fn f(a) { { var b = 1; } if (a) { return a + 1; } fn g() { return 2; } }";
+        Fn eager = (Fn) Parser.parse(Scanner.stream(code)).get(0);
+        Fn lazy = (Fn) new Parser(Scanner.stream(code), true).run().get(0);
+        assertFalse(lazy.isParsed());
+        // printing, hashing and comparing a function leave its body alone, even a broken one
+        Fn broken = (Fn) new Parser(Scanner.stream("fn f() { var = 1; }"), true).run().get(0);
+        broken.hashCode();
+        assertNotEquals(lazy, broken);
+        assertFalse(broken.toString().isEmpty());
+        assertFalse(lazy.isParsed() || broken.isParsed());
+        assertEquals(eager.getBody().size(), lazy.getBody().size());
+        for (int i = 0; i < eager.getBody().size(); i++)
+            assertEquals(AstPrinter.print(eager.getBody().get(i)), AstPrinter.print(lazy.getBody().get(i)));
+        assertThrows(RuntimeException.class, () -> new Parser(Scanner.stream("fn f() { { }"), true).run());
+    }
+
     @Test
     public void testAssigment() {
         List<Stmt> parse = Parser.parse(Scanner.scan("a = 2 + 2;"));
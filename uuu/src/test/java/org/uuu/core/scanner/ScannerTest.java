@@ -1,15 +1,23 @@
 package org.uuu.core.scanner;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.ArgumentsProvider;
 import org.junit.jupiter.params.provider.ArgumentsSource;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.uuu.core.scanner.TokenType.*;
 
 public class ScannerTest {
@@ -41,6 +49,7 @@ public class ScannerTest {
             TestCase.code(" 3+4\n -2 \n*8,").expected(NUMBER, PLUS, NUMBER, MINUS, NUMBER, STAR, NUMBER, COMMA),
             TestCase.code(" i == null ? true : -1").expected(IDENTIFIER, EQUAL_EQUAL, NULL, QUESTION, TRUE, COLON, MINUS, NUMBER),
             TestCase.code("(2+3)/43").expected(LEFT_PAREN, NUMBER, PLUS, NUMBER, RIGHT_PARENT, SLASH, NUMBER),
+            TestCase.code("1.x // trailing comment").expected(NUMBER, DOT, IDENTIFIER),
 
 
 //            TestCase.code("var r=.233").expected(VAR, IDENTIFIER, EQUAL, NUMBER), //TODO make it valid number ?
@@ -56,6 +65,100 @@ public class ScannerTest {
         assertEquals(expected, tokens.stream().map(Token::getType).toList());
     }
 
+    @Test
+    public void testPositions() {
+        List<Token> tokens = Scanner.scan("var ab = 12.5;\n  x <= \"s\\\"t\"");
+        assertEquals(List.of(2, 5, 7, 12, 13, 17, 20, 27), tokens.stream().map(Token::getPos).toList());
+        assertEquals(List.of(0, 0, 0, 0, 0, 1, 1, 1), tokens.stream().map(Token::getLine).toList());
+        assertEquals("ab", tokens.get(1).getLexeme());
+        assertEquals("s\\\"t", tokens.get(7).getLiteral());
+    }
+
+    @Test
+    public void testTokenStream() {
+        String code = "class A < B { fn f(x) { return self.x >= 1.5 ? \"s\" : null; } }";
+        TokenStream stream = Scanner.stream(code);
+        List<Token> tokens = Scanner.scan(code);
+        assertEquals(tokens.size(), stream.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = stream.token(i);
+            assertEquals(tokens.get(i).getType(), stream.type(i));
+            assertEquals(tokens.get(i).getLexeme(), token.getLexeme());
+            assertEquals(tokens.get(i).getLiteral(), stream.literal(i));
+            assertEquals(tokens.get(i).getPos(), stream.pos(i));
+            assertEquals(tokens.get(i).getLine(), stream.line(i));
+        }
+    }
+
+    @Test
+    public void testReader() {
+        String code = "class A < B { fn f(x) { return self.x >= 1.5 ? \"s\" : null; } }\n// note\nvar long = \""
+                      + "x".repeat(20000) + "\"; print(long == 12.25);";
+        List<Token> expected = Scanner.scan(code);
+        // a reader handing out one character at a time refills the buffer before every character
+        Reader trickle = new StringReader(code) {
+            @Override
+            public int read(char[] buffer, int off, int len) throws IOException {
+                return super.read(buffer, off, Math.min(len, 1));
+            }
+        };
+        for (Reader reader : new Reader[]{new StringReader(code), trickle}) {
+            List<Token> tokens = new Scanner(reader).pull().toList();
+            assertEquals(expected.size(), tokens.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                assertEquals(expected.get(i).getType(), tokens.get(i).getType());
+                assertEquals(expected.get(i).getLexeme(), tokens.get(i).getLexeme());
+                assertEquals(expected.get(i).getLiteral(), tokens.get(i).getLiteral());
+                assertEquals(expected.get(i).getPos(), tokens.get(i).getPos());
+                assertEquals(expected.get(i).getLine(), tokens.get(i).getLine());
+            }
+        }
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        Path path = Files.createTempFile("scanner", ".uuu");
+        try {
+            Files.writeString(path, "var s = \"caf\u00e9\";\nprint(s);");
+            List<Token> tokens = Scanner.open(path).stream().toList();
+            assertEquals(List.of(VAR, IDENTIFIER, EQUAL, STRING, SEMICOLON, IDENTIFIER, LEFT_PAREN, IDENTIFIER, RIGHT_PARENT, SEMICOLON),
+                         tokens.stream().map(Token::getType).toList());
+            assertEquals("caf\u00e9", tokens.get(3).getLiteral());
+            assertEquals(1, tokens.get(5).getLine());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testInternedIdentifiers() {
+        List<Token> tokens = Scanner.scan("count = count + 1; counter = count;");
+        assertSame(tokens.get(0).getLexeme(), tokens.get(2).getLexeme());
+        assertSame(tokens.get(0).getLexeme(), tokens.get(8).getLexeme());
+        assertEquals("counter", tokens.get(6).getLexeme());
+        assertSame(SEMICOLON.getLexeme(), tokens.get(5).getLexeme());
+    }
+
+    @Test
+    public void testSymbolTableGrows() {
+        SymbolTable symbols = new SymbolTable();
+        for (int i = 0; i < 1000; i++) symbols.intern("name" + i);
+        assertEquals(1000, symbols.size());
+        for (int i = 0; i < 1000; i++) assertEquals("name" + i, symbols.intern("name" + i));
+        assertEquals(1000, symbols.size());
+    }
+
+    @Test
+    public void testNumbers() {
+        for (String number : new String[]{"0", "7", "12.5", "0.1", "3.14159", "000123.4500", "9007199254740993",
+                                          "123456789012345678901234567890", "1.0000000000000000000000001", "0.30000000000000004"})
+            assertEquals(Double.parseDouble(number), Scanner.scan(number).get(0).getLiteral(), number);
+    }
+
+    @Test
+    public void testUnterminatedString() {
+        assertThrows(RuntimeException.class, () -> Scanner.scan("var s = \"abc"));
+    }
 
     static class Source implements ArgumentsProvider {
         @Override
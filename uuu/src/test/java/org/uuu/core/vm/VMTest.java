@@ -0,0 +1,489 @@
+package org.uuu.core.vm;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.uuu.core.ast.expression.Expr;
+import org.uuu.core.ast.statement.ExprStmt;
+import org.uuu.core.ast.statement.Stmt;
+import org.uuu.core.ast.statement.Var;
+import org.uuu.core.interpreter.Interpreter;
+import org.uuu.core.parser.Parser;
+import org.uuu.core.scanner.Scanner;
+import org.uuu.core.scanner.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VMTest {
+
+    @Test
+    public void testUndefinedVariable() {
+        assertThrows(RuntimeException.class, () -> run("a = g + 2;"));
+        assertThrows(RuntimeException.class, () -> run("a = 3 + 2;"));
+    }
+
+    @Test
+    public void testDoubleDeclaration() {
+        assertThrows(RuntimeException.class, () -> run("var a = 1; var a = 69;"));
+    }
+
+    @Test
+    public void testInvalidCode() {
+        assertThrows(RuntimeException.class, () -> run("var a = 2; return a;"));
+    }
+
+    @Test
+    public void testAssigment() {
+        VM vm = run("var a = 21;");
+        assertEquals(21d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testReAssigment() {
+        VM vm = run("var a = 2123; a = 69;");
+        assertEquals(69d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testVarDeclarationWithoutInitialValue() {
+        VM vm = run("var a; a = 69;");
+        assertEquals(69d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testMathPrecedence() {
+        VM vm = run("var a = 2 + 2 * 2;");
+        assertEquals(6d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testIf() {
+        VM vm = run("var a; if( 2 > 1) a = 32; else a = 99;");
+        assertEquals(32d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testElse() {
+        VM vm = run("var a; if( 2 == 1) a = 32; else a = 99;");
+        assertEquals(99d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testOr() {
+        VM vm = run("var a = false | !false;");
+        assertEquals(true, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testAnd() {
+        VM vm = run("var a = true & 2 > 1 & !false;");
+        assertEquals(true, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testLogicPrecedence() {
+        VM vm = run("var a = true | false & false;");
+        assertEquals(true, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testWhile() {
+        VM vm = run("var a = 1; while(a<5) a = a + 1;");
+        assertEquals(5d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testFor() {
+        VM vm = run("var a = 0; for(var i = 0; i<5;i=i+1) a = a + 1;");
+        assertEquals(5d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testFibonacci() {
+        String code = """
+                      var a = 0;
+                      var b = 1;
+                      for(var i = 10; i > 0;i = i - 1) {
+                          var tmp = a + b;
+                          a = b;
+                          b = tmp;
+                      }
+                      """;
+        VM vm = run(code);
+        assertEquals(55d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testLoopContinue() {
+        String code = """
+                      var a = 0;
+                      for(var i = 10; i > 0;i = i - 1) {
+                        if(i == 2) continue;
+                        if(i == 6) continue;
+                        a = a + 1;
+                      }
+                      """;
+        VM vm = run(code);
+        assertEquals(8d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testLoopBreak() {
+        String code = """
+                      var a = 0;
+                      for(var i = 10; i > 0;i = i - 1) {
+                        if(i == 5) break;
+                        a = a + 1;
+                      }
+                      """;
+        VM vm = run(code);
+        assertEquals(5d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testNestingLoops() {
+        String code = """
+                      var a = 0;
+                      for(var i = 10; i > 0;i = i - 1) {
+                        var b = 0;
+                        while(b < 10) {
+                          if(b == 5) break;
+                          a = a + 2;
+                          b = b + 1;
+                        }
+                        a = a + 1;
+                      }
+                      """;
+        VM vm = run(code);
+        assertEquals(110d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testFunction() {
+        String code = """
+                      var a = 0;
+                      fn increment(b) {
+                        a = a + b;
+                      }
+                      increment(1);
+                      increment(-2);
+                      increment(10);
+                      increment(10);
+                      """;
+        VM vm = run(code);
+        assertEquals(19d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testFunctionWithReturn() {
+        String code = """
+                      var a = 9;
+                      var b = 60;
+                      fn sum(a, b) {
+                        return a + b;
+                      }
+                      var x = sum(a,b);
+                      """;
+        VM vm = run(code);
+        assertEquals(69d, vm.getGlobal("x"));
+    }
+
+    @Disabled("not supported")
+    @Test
+    public void testFunctionCallBeforeDeclaration() {
+        String code = """
+                      var x = test();
+                      fn test() {
+                        return 69;
+                      }
+                      """;
+        VM vm = run(code);
+        assertEquals(69d, vm.getGlobal("x"));
+    }
+
+    @Test
+    public void testNestedFunction() {
+        String code = """
+                      fn test() {
+                        var i = 0;
+                        fn add() {
+                          i = i + 1;
+                          return i;
+                        }
+                        return add;
+                      }
+                      var f = test();
+                      f();
+                      f();
+                      var x = f();
+                      """;
+        VM vm = run(code);
+        assertEquals(3d, vm.getGlobal("x"));
+    }
+
+    @Test
+    public void testRecursiveFibonacci() {
+        String code = """
+                      fn fib(n) {
+                        if(n <= 1) return n;
+                        return fib(n-1) + fib(n-2);
+                      }
+                      var x = fib(10);
+                      """;
+        VM vm = run(code);
+        assertEquals(55d, vm.getGlobal("x"));
+    }
+
+    @Test
+    public void testCurrying() {
+        String code = """
+                      fn sum(a,b) { return a + b; }
+                      fn curry(a) {
+                          fn s(b) { return sum(a,b); }
+                          return s;
+                      }
+                      var a = 36;
+                      var b = 33;
+                      var x = curry(a)(b);
+                      """;
+        VM vm = run(code);
+        assertEquals(69d, vm.getGlobal("x"));
+    }
+
+    @Test
+    public void testScopes() {
+        String code = """
+                      var a = 1;
+                      var x;
+                      {
+                        fn test() {
+                          return a;
+                        }
+                        var a = 69;
+                        x = test();
+                      }
+                      """;
+        VM vm = run(code);
+        assertEquals(1d, vm.getGlobal("x"));
+    }
+
+    @Test
+    public void testClasses() {
+        String code = """
+                      class Test {
+                        fn test() {
+                          return self.test_two();
+                        }
+                        fn test_two() {
+                          return 33;
+                        }
+                      }
+                      var t = Test();
+                      var x = t.test();
+                      """;
+        VM vm = run(code);
+        assertEquals(33d, vm.getGlobal("x"));
+    }
+
+    @Test
+    public void testClassInitArgs() {
+        String code = """
+                      class Test {
+                        fn init(a,b) {
+                          self.a = a;
+                          self.b = b;
+                        }
+                        fn getA() {
+                          return self.a;
+                        }
+                        fn getB() {
+                          return self.b;
+                        }
+                      }
+                      var t = Test(33, 69);
+                      var x = t.getA();
+                      var xx = t.getB();
+                      """;
+        VM vm = run(code);
+        assertEquals(33d, vm.getGlobal("x"));
+        assertEquals(69d, vm.getGlobal("xx"));
+    }
+
+    @Test
+    public void testClassInit() {
+        String code = """
+                      class Test {
+                        fn init() {
+                          self.a = 69;
+                        }
+                        fn get() {
+                          return self.a;
+                        }
+                      }
+                      var t = Test();
+                      var x = t.get();
+                      var xx = t.a;
+                      """;
+        VM vm = run(code);
+        assertEquals(69d, vm.getGlobal("x"));
+        assertEquals(69d, vm.getGlobal("xx"));
+    }
+
+    @Test
+    public void testClassInheritance() {
+        String code = """
+                      class A {
+                        fn test() {
+                          return 69;
+                        }
+                      }
+                      class B < A {}
+                      var t = A();
+                      var x = t.test();
+                      """;
+        VM vm = run(code);
+        assertEquals(69d, vm.getGlobal("x"));
+    }
+
+    @Test
+    public void testClassSuper() {
+        String code = """
+                      class A {
+                        fn test() {
+                          return 69;
+                        }
+                      }
+                      class B < A {
+                       fn test() {
+                         return 42;
+                       }
+                       fn get() {
+                         return super.test();
+                       }
+                      }
+                      var a = A();
+                      var b = B();
+                      var x = b.get();
+                      var xx = b.test();
+                      """;
+        VM vm = run(code);
+        assertEquals(69d, vm.getGlobal("x"));
+        assertEquals(42d, vm.getGlobal("xx"));
+    }
+
+    @Test
+    public void testClosureOutlivesScope() {
+        String code = """
+                      var f;
+                      {
+                        var i = 10;
+                        fn add(n) {
+                          i = i + n;
+                          return i;
+                        }
+                        f = add;
+                      }
+                      f(1);
+                      var x = f(2);
+                      """;
+        VM vm = run(code);
+        assertEquals(13d, vm.getGlobal("x"));
+    }
+
+    @Test
+    public void testSuperBindsSelf() {
+        String code = """
+                      class A {
+                        fn name() {
+                          return self.n;
+                        }
+                      }
+                      class B < A {
+                        fn init() {
+                          self.n = 7;
+                        }
+                        fn name() {
+                          return super.name() + 1;
+                        }
+                      }
+                      var x = B().name();
+                      """;
+        VM vm = run(code);
+        assertEquals(8d, vm.getGlobal("x"));
+    }
+
+    @Test
+    public void testBreakInsideBlockScope() {
+        String code = """
+                      var a = 0;
+                      while(true) {
+                        var b = a + 1;
+                        fn get() { return b; }
+                        a = get();
+                        if(a == 3) break;
+                      }
+                      """;
+        VM vm = run(code);
+        assertEquals(3d, vm.getGlobal("a"));
+    }
+
+    @Test
+    public void testRuntimeErrorReportsLine() {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> run("var a = 1;\nvar b = a - true;"));
+        assertTrue(e.getMessage().contains("[line 1]"));
+    }
+
+    @Test
+    public void testNestedForInFunction() {
+        VM vm = run("""
+                    fn count() {
+                      var c = 0;
+                      for (var i = 0; i < 3; i = i + 1)
+                        for (var j = 0; j < 3; j = j + 1) c = c + 1;
+                      return c;
+                    }
+                    var r = count();
+                    """);
+        assertEquals(9d, vm.getGlobal("r"));
+    }
+
+    @Test
+    public void testPropertyAssignmentValue() {
+        // the grammar only has assignment statements, so the value is read through a hand-built declaration
+        String code = "class A {} var a = A(); a.x = 1;";
+        List<Stmt> statements = new ArrayList<>(Parser.parse(Scanner.scan(code)));
+        Expr set = ((ExprStmt) statements.remove(2)).getExpression();
+        statements.add(new Var(Token.ofIdent("r", 1, 1), set));
+        VM vm = new VM().interpret(statements);
+        assertEquals(1d, vm.getGlobal("r"));
+        // both engines give an assignment the value it assigned
+        statements = new ArrayList<>(Parser.parse(Scanner.scan(code)));
+        set = ((ExprStmt) statements.remove(2)).getExpression();
+        statements.add(new Var(Token.ofIdent("r", 1, 1), set));
+        Interpreter interpreter = new Interpreter(statements).interpret();
+        assertEquals(1d, interpreter.getGlobals().get(Token.ofIdent("r", 1, 1)));
+    }
+
+    @Test
+    public void testResumeInSlices() {
+        VM vm = new VM().start(Parser.parse(Scanner.scan("""
+                                                         fn add(a, b) { return a + b; }
+                                                         var r = 0;
+                                                         for (var i = 0; i < 100; i = i + 1) r = add(r, i);
+                                                         """)));
+        int slices = 1;
+        while (!vm.resume(7)) slices++;
+        assertTrue(vm.isDone());
+        // a hundred back-edges and a hundred calls take about thirty slices of seven
+        assertTrue(slices > 20);
+        assertEquals(4950d, vm.getGlobal("r"));
+    }
+
+    private static VM run(String code) {
+        return new VM().interpret(Parser.parse(Scanner.scan(code)));
+    }
+}
\ No newline at end of file